@@ -6,6 +6,8 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
+import java.util.concurrent.RejectedExecutionException;
+
 @RestControllerAdvice
 public class GlobalExceptionHandler {
     @ExceptionHandler(value = Exception.class)
@@ -13,4 +15,13 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(new ProblemModel().code(500).msg(e.getMessage()),
                 HttpStatus.INTERNAL_SERVER_ERROR);
     }
+
+    /**
+     * 后台线程池已满，客户端稍后重试
+     */
+    @ExceptionHandler(value = RejectedExecutionException.class)
+    public ResponseEntity<ProblemModel> rejectedExceptionHandler(RejectedExecutionException e) {
+        return new ResponseEntity<>(new ProblemModel().code(429).msg("Too many concurrent requests, try again later"),
+                HttpStatus.TOO_MANY_REQUESTS);
+    }
 }
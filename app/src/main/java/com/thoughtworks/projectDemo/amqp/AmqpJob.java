@@ -14,4 +14,6 @@ public class AmqpJob {
     private JobStatus status;
     private LocalDateTime createAt;
     private LocalDateTime updateAt;
+    // 投递时间的毫秒时间戳，用于统计任务在队列中等待的时间
+    private Long publishAt;
 }
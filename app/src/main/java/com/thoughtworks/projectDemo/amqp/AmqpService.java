@@ -11,6 +11,7 @@ public class AmqpService {
     private final RabbitTemplate rabbitTemplate;
 
     public void indexMigrateJob(AmqpJob job) {
+        job.setPublishAt(System.currentTimeMillis());
         rabbitTemplate.convertAndSend("indexMigrateJobExchange", "job.indexMigrate", job);
     }
 }
@@ -1,11 +1,27 @@
 package com.thoughtworks.projectDemo.amqp;
 
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
 
 @Data
 @Builder
+@NoArgsConstructor
+@AllArgsConstructor
 public class IndexMigrateJobData {
     private Long indexId;
     private IndexMigrateJobType type;
+    // 子任务所属的父任务
+    private Long parentJobId;
+    // 子任务处理的DOC.ID范围(fromDocId, toDocId]，父任务上记录的是整体的范围
+    private Long fromDocId;
+    private Long toDocId;
+    // REINDEX时需要转换为字符串的字段
+    private List<String> stringifyFields;
+    // 切换为批量导入模式前目标索引的配置，任务结束后恢复
+    private Map<String, String> originalIndexSettings;
 }
@@ -3,10 +3,13 @@ package com.thoughtworks.projectDemo.amqp;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.thoughtworks.projectDemo.enums.JobStatus;
 import com.thoughtworks.projectDemo.enums.LogType;
+import com.thoughtworks.projectDemo.metrics.PipelineMetrics;
+import com.thoughtworks.projectDemo.migration.JobProgress;
 import com.thoughtworks.projectDemo.service.IndexService;
 import com.thoughtworks.projectDemo.service.JobService;
 import com.thoughtworks.projectDemo.tables.daos.IndexDao;
 import com.thoughtworks.projectDemo.tables.daos.IndexDocRecordDao;
+import com.thoughtworks.projectDemo.tables.pojos.Index;
 import lombok.AllArgsConstructor;
 import lombok.SneakyThrows;
 import org.springframework.amqp.core.ExchangeTypes;
@@ -14,6 +17,8 @@ import org.springframework.amqp.rabbit.annotation.*;
 import org.springframework.stereotype.Component;
 
 import java.util.Objects;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 
 import static com.thoughtworks.projectDemo.Tables.INDEX_DOC_RECORD;
 
@@ -22,7 +27,7 @@ import static com.thoughtworks.projectDemo.Tables.INDEX_DOC_RECORD;
         value = @Queue("indexMigrateJobQueue"),
         exchange = @Exchange(value = "indexMigrateJobExchange", type = ExchangeTypes.DIRECT),
         key = "job.indexMigrate"
-))
+), concurrency = "${migration.listener-concurrency:2}")
 @AllArgsConstructor
 public class IndexMigrateJobListener {
     private final IndexDao indexDao;
@@ -30,44 +35,101 @@ public class IndexMigrateJobListener {
     private final IndexService indexService;
     private final ObjectMapper objectMapper;
     private final JobService jobService;
+    private final PipelineMetrics pipelineMetrics;
 
     @RabbitHandler
     @SneakyThrows
     public void onMessage(AmqpJob job) {
         //var job = objectMapper.readValue(message,Job.class);
         assert job.getJobData() != null;
+        if (Objects.nonNull(job.getPublishAt())) {
+            pipelineMetrics.recordJobQueueTime(job.getJobType().name(), System.currentTimeMillis() - job.getPublishAt());
+        }
+        var currentJob = jobService.getJob(job.getId());
+        if (Objects.isNull(currentJob) || currentJob.getStatus() == JobStatus.Succeed || currentJob.getStatus() == JobStatus.Failed) {
+            // 已经结束的任务被重新投递，直接忽略
+            return;
+        }
+        // 重新投递的任务从最后一次checkpoint继续
+        var checkpointDocId = currentJob.getCheckpointDocId();
         jobService.updateJobStatus(job.getId(), JobStatus.Running);
+        IndexMigrateJobData jobData = null;
+        Index index = null;
         try {
-            var jobData = objectMapper.readValue(job.getJobData(), IndexMigrateJobData.class);
-            var index = indexDao.fetchOneById(jobData.getIndexId());
+            jobData = objectMapper.readValue(job.getJobData(), IndexMigrateJobData.class);
+            index = indexDao.fetchOneById(jobData.getIndexId());
             if (Objects.isNull(index)) {
                 throw new RuntimeException("Index not found");
             }
+            var indexId = index.getId();
+            Consumer<Exception> exceptionConsumer = e -> jobService.addJobError(job.getId(), e);
+            Consumer<JobProgress> progressConsumer = progress -> jobService.updateJobProgress(job.getId(), progress);
+            BooleanSupplier notCancelled = () -> false;
             switch (jobData.getType()) {
                 case APPEND:
-                    var indexDocRecord = indexDocRecordDao.fetchOne(INDEX_DOC_RECORD.INDEX_ID, index.getId());
-                    if (Objects.isNull(indexDocRecord)) {
-                        // 代表一个数据都没导入过
-                        indexService.appendDataProcess(index.getName(), 0L, e -> {
-                            jobService.addJobLog(job.getId(), LogType.Error, e.getMessage());
-                        });
-                    } else {
-                        // 代表有数据导入过
-                        indexService.appendDataProcess(index.getName(), indexDocRecord.getLatestDocId(), e -> {
-                            jobService.addJobLog(job.getId(), LogType.Error, e.getMessage());
-                        });
+                    var startDocId = checkpointDocId;
+                    if (Objects.isNull(startDocId)) {
+                        var indexDocRecord = indexDocRecordDao.fetchOne(INDEX_DOC_RECORD.INDEX_ID, indexId);
+                        // 为null代表一个数据都没导入过
+                        startDocId = Objects.isNull(indexDocRecord) ? 0L : indexDocRecord.getLatestDocId();
                     }
+                    var appendLastDocId = indexService.migrateDocRange(index.getName(), startDocId, null,
+                            docId -> indexService.saveMigrationCheckpoint(job.getId(), indexId, docId, true), progressConsumer, exceptionConsumer, notCancelled);
+                    indexService.finishMigration(index.getName(), true, appendLastDocId, null);
                     break;
                 case REINSERT:
-                    indexService.appendDataProcess(index.getName(), 0L, e -> {
-                        jobService.addJobLog(job.getId(), LogType.Error, e.getMessage());
-                    });
+                    if (Objects.isNull(jobData.getParentJobId())) {
+                        var reinsertLastDocId = indexService.migrateDocRange(index.getName(), Objects.requireNonNullElse(checkpointDocId, 0L), null,
+                                docId -> indexService.saveMigrationCheckpoint(job.getId(), indexId, docId, false), progressConsumer, exceptionConsumer, notCancelled);
+                        indexService.finishMigration(index.getName(), true, reinsertLastDocId, jobData.getOriginalIndexSettings());
+                    } else {
+                        // 拆分后的子任务只处理自己的DOC.ID范围，其他子任务失败后父任务被标记为失败，停止写入
+                        var parentJobId = jobData.getParentJobId();
+                        var fromDocId = Objects.isNull(checkpointDocId) ? jobData.getFromDocId() : Math.max(jobData.getFromDocId(), checkpointDocId);
+                        var lastDocId = indexService.migrateDocRange(index.getName(), fromDocId, jobData.getToDocId(),
+                                docId -> indexService.saveMigrationCheckpoint(job.getId(), indexId, docId, false), progressConsumer, exceptionConsumer,
+                                () -> jobService.isJobFailed(parentJobId));
+                        jobService.addJobLog(job.getId(), LogType.Info,
+                                "Docs (" + jobData.getFromDocId() + ", " + jobData.getToDocId() + "] migrated, last doc " + lastDocId);
+                    }
+                    break;
+                case REINDEX:
+                    // 数据由ES从旧索引复制，不改变IndexDocRecord的进度
+                    indexService.reindexProcess(index.getName(), jobData.getStringifyFields(),
+                            progress -> jobService.addJobLog(job.getId(), LogType.Info, progress));
+                    indexService.finishMigration(index.getName(), true, null, jobData.getOriginalIndexSettings());
                     break;
             }
         } catch (Exception e) {
+            jobService.addJobLog(job.getId(), LogType.Error, e.getMessage());
+            if (Objects.nonNull(jobData) && Objects.nonNull(jobData.getParentJobId())) {
+                finishChildJob(job.getId(), jobData.getParentJobId(), index, JobStatus.Failed);
+                return;
+            }
             jobService.updateJobStatus(job.getId(), JobStatus.Failed);
+            if (Objects.nonNull(index)) {
+                indexService.finishMigration(index.getName(), false, null, jobData.getOriginalIndexSettings());
+            }
+            return;
+        }
+        if (Objects.nonNull(jobData.getParentJobId())) {
+            finishChildJob(job.getId(), jobData.getParentJobId(), index, JobStatus.Succeed);
             return;
         }
         jobService.updateJobStatus(job.getId(), JobStatus.Succeed);
     }
+
+    /**
+     * 所有子任务都结束后，由最后一个结束的子任务按父任务的结果恢复索引状态
+     * 失败时正在构建的索引会被删除，必须等其他子任务都停止写入，否则ES会自动创建同名索引
+     */
+    private void finishChildJob(Long jobId, Long parentJobId, Index index, JobStatus jobStatus) {
+        if (!jobService.finishChildJob(jobId, parentJobId, jobStatus) || Objects.isNull(index)) {
+            return;
+        }
+        var succeed = jobService.getJob(parentJobId).getStatus() == JobStatus.Succeed;
+        var parentJobData = jobService.getJobData(parentJobId, IndexMigrateJobData.class);
+        indexService.finishMigration(index.getName(), succeed, succeed ? parentJobData.getToDocId() : null,
+                parentJobData.getOriginalIndexSettings());
+    }
 }
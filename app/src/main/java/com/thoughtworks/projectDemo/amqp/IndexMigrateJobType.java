@@ -1,5 +1,5 @@
 package com.thoughtworks.projectDemo.amqp;
 
 public enum IndexMigrateJobType {
-    REINSERT, APPEND
+    REINSERT, APPEND, REINDEX
 }
@@ -4,6 +4,8 @@ import com.thoughtworks.projectDemo.model.CollectionModel;
 import com.thoughtworks.projectDemo.model.PropertyModel;
 import com.thoughtworks.projectDemo.service.CollectionService;
 import lombok.AllArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
@@ -69,6 +71,7 @@ public class Collection implements CollectionApiDelegate {
 
     /**
      * POST /collections/{collectionName}/upload : 上传excel文件
+     * 异步导入，响应头中的jobId是导入任务的id
      *
      * @param collectionName (required)
      * @param file           (optional)
@@ -77,8 +80,11 @@ public class Collection implements CollectionApiDelegate {
      */
     @Override
     public ResponseEntity<Void> postCollectionsCollectionNameUpload(String collectionName, MultipartFile file) throws Exception {
-        collectionService.uploadExcel(collectionName, file.getInputStream());
-        return ResponseEntity.ok().build();
+        var job = collectionService.uploadExcel(collectionName, file);
+        var headers = new HttpHeaders();
+        assert job.getId() != null;
+        headers.add("jobId", job.getId().toString());
+        return new ResponseEntity<>(headers, HttpStatus.OK);
     }
 
 
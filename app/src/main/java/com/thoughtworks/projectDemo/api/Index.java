@@ -1,10 +1,14 @@
 package com.thoughtworks.projectDemo.api;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thoughtworks.projectDemo.model.BulkUpdateResultModel;
 import com.thoughtworks.projectDemo.model.DocumentModel;
 import com.thoughtworks.projectDemo.model.IndexModel;
+import com.thoughtworks.projectDemo.model.MultiGetDocumentModel;
 import com.thoughtworks.projectDemo.service.IndexService;
 import lombok.AllArgsConstructor;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -75,6 +79,51 @@ public class Index implements IndexApiDelegate {
         return ResponseEntity.ok(documents);
     }
 
+    /**
+     * POST /indices/{indexName}/_export : 导出查询结果
+     * 以NDJSON的形式流式返回所有匹配的文档，不支持sort、from、size等分页参数
+     *
+     * @param indexName (required)
+     * @param body      (optional)
+     * @return OK (status code 200)
+     * @see IndexApi#postIndicesIndexNameExport
+     */
+    @Override
+    public ResponseEntity<Resource> postIndicesIndexNameExport(String indexName, Object body) throws Exception {
+        var inputStream = indexService.exportDocument(indexName, objectMapper.writeValueAsString(body));
+        return ResponseEntity.ok(new InputStreamResource(inputStream));
+    }
+
+    /**
+     * POST /indices/{indexName}/docs/_mget : 批量获取文档
+     * 按请求中id的顺序返回文档，不存在的文档found为false
+     *
+     * @param indexName   (required)
+     * @param requestBody (optional)
+     * @return OK (status code 200)
+     * @see IndexApi#postIndicesIndexNameDocsMget
+     */
+    @Override
+    public ResponseEntity<List<MultiGetDocumentModel>> postIndicesIndexNameDocsMget(String indexName, List<String> requestBody) throws Exception {
+        var documents = indexService.multiGetDocument(indexName, requestBody == null ? List.of() : requestBody);
+        return ResponseEntity.ok(documents);
+    }
+
+    /**
+     * POST /indices/{indexName}/docs/_bulk : 批量更新文档
+     * 每个文档的更新规则与PUT /indices/{indexName}/doc/{docId}相同，按请求的顺序返回每个文档的结果
+     *
+     * @param indexName     (required)
+     * @param documentModel (optional)
+     * @return OK (status code 200)
+     * @see IndexApi#postIndicesIndexNameDocsBulk
+     */
+    @Override
+    public ResponseEntity<List<BulkUpdateResultModel>> postIndicesIndexNameDocsBulk(String indexName, List<DocumentModel> documentModel) throws Exception {
+        var results = indexService.bulkUpdateDocument(indexName, documentModel == null ? List.of() : documentModel);
+        return ResponseEntity.ok(results);
+    }
+
     /**
      * POST /indices/{indexName} : 更新index
      *
@@ -0,0 +1,25 @@
+package com.thoughtworks.projectDemo.api;
+
+import com.thoughtworks.projectDemo.model.JobModel;
+import com.thoughtworks.projectDemo.service.JobService;
+import lombok.AllArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+@Service
+@AllArgsConstructor
+public class Job implements JobApiDelegate {
+    private final JobService jobService;
+
+    /**
+     * GET /jobs/{jobId} : 获取任务信息和进度
+     *
+     * @param jobId (required)
+     * @return OK (status code 200)
+     * @see JobApi#getJobsJobId
+     */
+    @Override
+    public ResponseEntity<JobModel> getJobsJobId(Long jobId) throws Exception {
+        return ResponseEntity.ok(jobService.getJobModel(jobId));
+    }
+}
@@ -0,0 +1,80 @@
+package com.thoughtworks.projectDemo.cache;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.stereotype.Component;
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+/**
+ * 通过Postgres的LISTEN接收其他节点发出的失效通知
+ * LISTEN需要一直占用连接，使用单独建立的连接，不占用连接池
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IndexCacheInvalidationListener {
+    private final DataSourceProperties dataSourceProperties;
+    private final IndexMetadataCache indexMetadataCache;
+    private final IndexCacheProperties indexCacheProperties;
+    private volatile boolean running;
+    private Thread thread;
+
+    @PostConstruct
+    public void start() {
+        if (!indexCacheProperties.isListen()) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::listen, "index-cache-listener");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void listen() {
+        while (running) {
+            try (var connection = DriverManager.getConnection(dataSourceProperties.determineUrl(),
+                    dataSourceProperties.determineUsername(), dataSourceProperties.determinePassword())) {
+                var pgConnection = connection.unwrap(PGConnection.class);
+                try (var statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + IndexMetadataCache.CHANNEL);
+                }
+                // 断开期间可能错过了通知，全部失效
+                indexMetadataCache.evictAll();
+                while (running) {
+                    var notifications = pgConnection.getNotifications(1000);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (var notification : notifications) {
+                        indexMetadataCache.evict(notification.getParameter());
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Index cache listener disconnected, retry later", e);
+                indexMetadataCache.evictAll();
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException ignored) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.thoughtworks.projectDemo.cache;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "index-cache")
+public class IndexCacheProperties {
+    // 缓存的最长存活时间，通知丢失时作为兜底
+    private Duration ttl = Duration.ofMinutes(5);
+    // 是否通过Postgres的LISTEN/NOTIFY在多个节点之间同步失效
+    private boolean listen = true;
+}
@@ -0,0 +1,85 @@
+package com.thoughtworks.projectDemo.cache;
+
+import com.thoughtworks.projectDemo.model.IndexModel;
+import lombok.AllArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jooq.DSLContext;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * index名称 -> IndexModel的进程内缓存
+ * 修改index时调用invalidate，通过pg_notify通知其他节点一起失效
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IndexMetadataCache {
+    public static final String CHANNEL = "index_metadata_cache";
+
+    private final DSLContext dslContext;
+    private final IndexCacheProperties indexCacheProperties;
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+    // 每次失效加一，加载期间发生过失效的结果不写入缓存
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * 返回的IndexModel是共享的，调用方不能修改
+     */
+    public IndexModel get(String indexName, Function<String, IndexModel> loader) {
+        var entry = cache.get(indexName);
+        if (entry != null && System.nanoTime() - entry.loadAt < indexCacheProperties.getTtl().toNanos()) {
+            return entry.indexModel;
+        }
+        var loadGeneration = generation.get();
+        var indexModel = loader.apply(indexName);
+        var loaded = new Entry(indexModel, System.nanoTime());
+        // 失效先增加generation再删除缓存，在compute中检查可以保证并发的失效总是最后生效
+        cache.compute(indexName, (key, current) -> generation.get() == loadGeneration ? loaded : current);
+        return indexModel;
+    }
+
+    /**
+     * 失效本节点的缓存并通知其他节点，在事务中时提交后会再失效一次，避免读到未提交前的旧数据
+     */
+    public void invalidate(String indexName) {
+        evict(indexName);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(indexName);
+                }
+            });
+        }
+        try {
+            // 在事务中时通知会在提交后才发出
+            dslContext.fetch("select pg_notify(?, ?)", CHANNEL, indexName);
+        } catch (Exception e) {
+            log.warn("Failed to notify index cache invalidation of {}", indexName, e);
+        }
+    }
+
+    public void evict(String indexName) {
+        generation.incrementAndGet();
+        cache.remove(indexName);
+    }
+
+    public void evictAll() {
+        generation.incrementAndGet();
+        cache.clear();
+    }
+
+    @AllArgsConstructor
+    private static class Entry {
+        private final IndexModel indexModel;
+        private final long loadAt;
+    }
+}
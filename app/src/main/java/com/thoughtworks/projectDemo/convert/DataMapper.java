@@ -2,7 +2,10 @@ package com.thoughtworks.projectDemo.convert;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.thoughtworks.projectDemo.amqp.AmqpJob;
+import com.thoughtworks.projectDemo.migration.JobProgress;
 import com.thoughtworks.projectDemo.model.IndexModel;
+import com.thoughtworks.projectDemo.model.JobModel;
+import com.thoughtworks.projectDemo.model.JobProgressModel;
 import com.thoughtworks.projectDemo.model.PropertyModel;
 import com.thoughtworks.projectDemo.model.RestrictModel;
 import com.thoughtworks.projectDemo.tables.pojos.Index;
@@ -49,5 +52,13 @@ public interface DataMapper {
       IndexProperty toIndexProperty(PropertyModel indexProperty);
 
       @Mapping(target = "jobData", source = "jobData", qualifiedByName = "jsonbToString")
+      @Mapping(target = "publishAt", ignore = true)
       AmqpJob toAmqpJob(Job job);
+
+      @Mapping(target = "jobStatus", source = "status")
+      @Mapping(target = "relateId", ignore = true)
+      @Mapping(target = "progress", ignore = true)
+      JobModel toJobModel(Job job);
+
+      JobProgressModel toJobProgressModel(JobProgress jobProgress);
 }
@@ -0,0 +1,170 @@
+package com.thoughtworks.projectDemo.elastic;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thoughtworks.projectDemo.metrics.PipelineMetrics;
+import lombok.Getter;
+import lombok.SneakyThrows;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestClient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 将文档以NDJSON的形式直接写入可复用的缓冲区，按字节数和文档数切分_bulk请求，
+ * 并解析响应中的items[]，把写入失败的文档返回给调用方
+ * externalVersion为true时以_source_id作为外部版本号写入，同一个_id较旧的doc不会覆盖较新的doc，
+ * 因此不同范围的迁移任务可以按任意顺序并行写入
+ * 非线程安全，一个迁移任务持有一个实例以复用缓冲区
+ */
+public class BulkIndexer {
+    public static final int DEFAULT_MAX_BATCH_BYTES = 5 * 1024 * 1024;
+    public static final int DEFAULT_MAX_BATCH_DOCS = 1000;
+    private static final String VERSION_CONFLICT = "version_conflict_engine_exception";
+
+    private final RestClient restClient;
+    private final ObjectMapper objectMapper;
+    private final PipelineMetrics pipelineMetrics;
+    private final int maxBatchBytes;
+    private final int maxBatchDocs;
+    private final boolean externalVersion;
+    private final BulkBuffer buffer = new BulkBuffer();
+    private final JsonGenerator generator;
+    private final List<ElasticDocument> pending = new ArrayList<>();
+    // 已经发送给ES的字节数
+    @Getter
+    private long bytesSent;
+
+    @SneakyThrows
+    public BulkIndexer(RestClient restClient, ObjectMapper objectMapper, PipelineMetrics pipelineMetrics, int maxBatchBytes, int maxBatchDocs,
+                       boolean externalVersion) {
+        this.restClient = restClient;
+        this.objectMapper = objectMapper;
+        this.pipelineMetrics = pipelineMetrics;
+        this.maxBatchBytes = maxBatchBytes;
+        this.maxBatchDocs = maxBatchDocs;
+        this.externalVersion = externalVersion;
+        this.generator = objectMapper.getFactory().createGenerator(buffer);
+        // 每行之间的换行由我们自己写入
+        this.generator.setRootValueSeparator(null);
+    }
+
+    /**
+     * 写入一批文档，达到批次上限时立即发送，返回所有写入失败的文档
+     */
+    public List<BulkItemFailure> index(List<ElasticDocument> elasticDocuments) {
+        var failures = new ArrayList<BulkItemFailure>();
+        for (ElasticDocument elasticDocument : elasticDocuments) {
+            if (add(elasticDocument)) {
+                failures.addAll(flush());
+            }
+        }
+        failures.addAll(flush());
+        return failures;
+    }
+
+    /**
+     * 追加一个文档到缓冲区，返回是否达到了字节数或文档数的上限
+     */
+    @SneakyThrows
+    public boolean add(ElasticDocument elasticDocument) {
+        generator.writeStartObject();
+        generator.writeObjectFieldStart("index");
+        generator.writeStringField("_index", elasticDocument.getIndex());
+        generator.writeStringField("_id", elasticDocument.getId());
+        if (externalVersion) {
+            generator.writeNumberField("version", elasticDocument.getSourceId());
+            generator.writeStringField("version_type", "external_gte");
+        }
+        generator.writeEndObject();
+        generator.writeEndObject();
+        generator.flush();
+        buffer.write('\n');
+        elasticDocument.writeHasSourceIdDocument(generator);
+        generator.flush();
+        buffer.write('\n');
+        pending.add(elasticDocument);
+        return pending.size() >= maxBatchDocs || buffer.size() >= maxBatchBytes;
+    }
+
+    /**
+     * 发送缓冲区中的文档，返回写入失败的文档
+     */
+    @SneakyThrows
+    public List<BulkItemFailure> flush() {
+        if (pending.isEmpty()) {
+            return List.of();
+        }
+        try {
+            var request = new Request("POST", "/_bulk");
+            request.setEntity(new ByteArrayEntity(buffer.array(), 0, buffer.size(), ContentType.APPLICATION_JSON));
+            var start = System.nanoTime();
+            Response response = restClient.performRequest(request);
+            var failures = readFailures(response);
+            pipelineMetrics.recordBulk(buffer.size(), pending.size(), System.nanoTime() - start);
+            failures.forEach(failure -> pipelineMetrics.recordBulkItemFailure(failure.getIndex(), failure.getType()));
+            bytesSent += buffer.size();
+            return failures;
+        } finally {
+            pending.clear();
+            buffer.reset();
+        }
+    }
+
+    private List<BulkItemFailure> readFailures(Response response) throws IOException {
+        var failures = new ArrayList<BulkItemFailure>();
+        try (var parser = objectMapper.getFactory().createParser(response.getEntity().getContent())) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new RuntimeException("Failed to parse bulk response");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                var fieldName = parser.currentName();
+                parser.nextToken();
+                if ("errors".equals(fieldName) && !parser.getBooleanValue()) {
+                    // 没有失败的文档，不需要再解析items
+                    return failures;
+                } else if ("items".equals(fieldName)) {
+                    var position = 0;
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        var item = objectMapper.readValue(parser, BulkResponseItem.class);
+                        var result = item.getIndex();
+                        // 外部版本冲突说明ES中已经是同一个_id更新的doc，不算失败
+                        if (result != null && result.getError() != null
+                                && !(externalVersion && VERSION_CONFLICT.equals(result.getError().getType()))) {
+                            var elasticDocument = pending.get(position);
+                            failures.add(BulkItemFailure.builder()
+                                    .index(result.getIndex())
+                                    .id(result.getId())
+                                    .sourceId(elasticDocument.getSourceId())
+                                    .status(result.getStatus())
+                                    .type(result.getError().getType())
+                                    .reason(result.getError().getReason())
+                                    .build());
+                        }
+                        position++;
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return failures;
+    }
+
+    private static class BulkBuffer extends ByteArrayOutputStream {
+        BulkBuffer() {
+            super(64 * 1024);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+}
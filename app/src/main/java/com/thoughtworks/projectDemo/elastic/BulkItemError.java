@@ -0,0 +1,14 @@
+package com.thoughtworks.projectDemo.elastic;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+@Data
+public class BulkItemError {
+
+    @JsonProperty("type")
+    private String type;
+
+    @JsonProperty("reason")
+    private String reason;
+}
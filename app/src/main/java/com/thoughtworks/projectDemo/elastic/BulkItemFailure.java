@@ -0,0 +1,16 @@
+package com.thoughtworks.projectDemo.elastic;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class BulkItemFailure {
+    private String index;
+    private String id;
+    // 在doc数据库里的原始文档id
+    private Long sourceId;
+    private int status;
+    private String type;
+    private String reason;
+}
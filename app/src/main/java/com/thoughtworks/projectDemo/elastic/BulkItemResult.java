@@ -4,17 +4,17 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 
 @Data
-public class HitsItem {
+public class BulkItemResult {
 
     @JsonProperty("_index")
     private String index;
 
-    @JsonProperty("_source")
-    private Object source;
-
     @JsonProperty("_id")
     private String id;
 
-    @JsonProperty("_score")
-    private Object score;
-}
\ No newline at end of file
+    @JsonProperty("status")
+    private int status;
+
+    @JsonProperty("error")
+    private BulkItemError error;
+}
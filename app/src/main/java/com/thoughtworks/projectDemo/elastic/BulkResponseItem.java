@@ -0,0 +1,11 @@
+package com.thoughtworks.projectDemo.elastic;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+@Data
+public class BulkResponseItem {
+
+    @JsonProperty("index")
+    private BulkItemResult index;
+}
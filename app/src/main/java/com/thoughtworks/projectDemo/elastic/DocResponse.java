@@ -7,7 +7,7 @@ import lombok.Data;
 public class DocResponse {
 
     @JsonProperty("_seq_no")
-    private int seqNo;
+    private long seqNo;
 
     @JsonProperty("found")
     private boolean found;
@@ -22,8 +22,8 @@ public class DocResponse {
     private String id;
 
     @JsonProperty("_version")
-    private int version;
+    private long version;
 
     @JsonProperty("_primary_term")
-    private int primaryTerm;
+    private long primaryTerm;
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package com.thoughtworks.projectDemo.elastic;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import lombok.Builder;
@@ -9,7 +10,7 @@ import lombok.SneakyThrows;
 
 @Setter
 @Getter
-@Builder
+@Builder(toBuilder = true)
 public class ElasticDocument {
     private String index;
     private String id;
@@ -28,11 +29,34 @@ public class ElasticDocument {
         return builder.build();
     }
 
+    /**
+     * documentJson是不含_source_id的JSON对象，直接在开头拼接上_source_id，不需要再解析一次
+     */
+    public String buildHasSourceIdDocumentJson() {
+        var start = documentJson.indexOf('{') + 1;
+        return "{\"_source_id\":" + sourceId + (isEmptyObject(start) ? "" : ",") + documentJson.substring(start);
+    }
+
+    /**
+     * 同buildHasSourceIdDocumentJson，直接写入generator
+     */
     @SneakyThrows
-    public String buildHasSourceIdDocumentJson(ObjectMapper objectMapper) {
-        var tree = objectMapper.readTree(documentJson);
-        var objectNode = objectMapper.convertValue(tree, ObjectNode.class);
-        objectNode.put("_source_id", sourceId);
-        return objectMapper.writeValueAsString(objectNode);
+    public void writeHasSourceIdDocument(JsonGenerator generator) {
+        var start = documentJson.indexOf('{') + 1;
+        generator.writeRaw("{\"_source_id\":");
+        generator.writeRaw(String.valueOf(sourceId));
+        if (!isEmptyObject(start)) {
+            generator.writeRaw(',');
+        }
+        generator.writeRaw(documentJson, start, documentJson.length() - start);
+    }
+
+    private boolean isEmptyObject(int start) {
+        for (int i = start; i < documentJson.length(); i++) {
+            if (!Character.isWhitespace(documentJson.charAt(i))) {
+                return documentJson.charAt(i) == '}';
+            }
+        }
+        return true;
     }
 }
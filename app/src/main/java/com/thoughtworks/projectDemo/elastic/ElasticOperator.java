@@ -1,25 +1,39 @@
 package com.thoughtworks.projectDemo.elastic;
 
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.thoughtworks.projectDemo.metrics.PipelineMetrics;
 import lombok.AllArgsConstructor;
 import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.http.util.EntityUtils;
 import org.elasticsearch.client.Request;
 import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
 import org.elasticsearch.client.RestClient;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
 
+@Slf4j
 @Service
 @AllArgsConstructor
 public class ElasticOperator {
+    private static final String POINT_IN_TIME_KEEP_ALIVE = "1m";
+    private static final List<String> SCROLL_UNSUPPORTED_KEYS = List.of("sort", "from", "size", "search_after", "pit", "scroll");
+    private static final String STRINGIFY_FIELDS_SCRIPT = "for (f in params.fields) { def v = ctx._source[f]; "
+            + "if (v != null && !(v instanceof String)) { ctx._source[f] = v.toString(); } }";
     private final ElasticsearchClient elasticsearchClient;
     private final RestClient restClient;
     private final ObjectMapper objectMapper;
+    private final PipelineMetrics pipelineMetrics;
 
     @SneakyThrows
     public void createIndex(String index) {
@@ -29,9 +43,107 @@ public class ElasticOperator {
         elasticsearchClient.indices().create(r -> r.index(index));
     }
 
+    /**
+     * 创建索引的同时创建指向它的别名
+     */
     @SneakyThrows
-    public void reindex(String sourceIndex, String destIndex) {
-        elasticsearchClient.reindex(r -> r.source(s -> s.index(sourceIndex)).dest(d -> d.index(destIndex)));
+    public void createIndex(String index, String alias) {
+        if (elasticsearchClient.indices().exists(r -> r.index(index)).value()) {
+            elasticsearchClient.indices().delete(r -> r.index(index));
+        }
+        elasticsearchClient.indices().create(r -> r.index(index).aliases(alias, a -> a));
+    }
+
+    @SneakyThrows
+    public boolean existsAlias(String alias) {
+        return elasticsearchClient.indices().existsAlias(r -> r.name(alias)).value();
+    }
+
+    /**
+     * 在一个_aliases请求中把别名从旧索引移到新索引，读请求不会看到别名不存在的中间状态
+     */
+    @SneakyThrows
+    public void swapAlias(String alias, String oldIndex, String newIndex) {
+        var removeOld = oldIndex != null && elasticsearchClient.indices().exists(r -> r.index(oldIndex)).value();
+        elasticsearchClient.indices().updateAliases(r -> {
+            if (removeOld) {
+                r.actions(a -> a.remove(remove -> remove.index(oldIndex).alias(alias).mustExist(false)));
+            }
+            return r.actions(a -> a.add(add -> add.index(newIndex).alias(alias)));
+        });
+    }
+
+    /**
+     * 以后台任务的方式执行_reindex，按分片自动切分并行复制，stringifyFields中的字段会被转换为字符串
+     * 返回任务id，通过getTask查询进度
+     */
+    @SneakyThrows
+    public String reindex(String sourceIndex, String destIndex, List<String> stringifyFields) {
+        var body = objectMapper.createObjectNode();
+        body.putObject("source").put("index", sourceIndex);
+        body.putObject("dest").put("index", destIndex);
+        if (!stringifyFields.isEmpty()) {
+            var script = body.putObject("script");
+            script.put("lang", "painless");
+            script.put("source", STRINGIFY_FIELDS_SCRIPT);
+            var fields = script.putObject("params").putArray("fields");
+            stringifyFields.forEach(fields::add);
+        }
+        var request = new Request("POST", "/_reindex");
+        request.addParameter("wait_for_completion", "false");
+        request.addParameter("slices", "auto");
+        request.setJsonEntity(objectMapper.writeValueAsString(body));
+        Response response = restClient.performRequest(request);
+        return objectMapper.readTree(EntityUtils.toString(response.getEntity())).get("task").asText();
+    }
+
+    @SneakyThrows
+    public JsonNode getTask(String taskId) {
+        var request = new Request("GET", "/_tasks/" + taskId);
+        Response response = restClient.performRequest(request);
+        return objectMapper.readTree(EntityUtils.toString(response.getEntity()));
+    }
+
+    /**
+     * 读取索引的配置，没有显式设置的使用默认值
+     */
+    @SneakyThrows
+    public Map<String, String> getIndexSettings(String index, List<String> names) {
+        var request = new Request("GET", "/" + index + "/_settings/" + String.join(",", names));
+        request.addParameter("flat_settings", "true");
+        request.addParameter("include_defaults", "true");
+        Response response = restClient.performRequest(request);
+        var indexNode = objectMapper.readTree(EntityUtils.toString(response.getEntity())).path(index);
+        var settings = new HashMap<String, String>();
+        for (String name : names) {
+            var value = indexNode.path("settings").path(name);
+            if (value.isMissingNode()) {
+                value = indexNode.path("defaults").path(name);
+            }
+            if (!value.isMissingNode()) {
+                settings.put(name, value.asText());
+            }
+        }
+        return settings;
+    }
+
+    @SneakyThrows
+    public void putIndexSettings(String index, Map<String, String> settings) {
+        var request = new Request("PUT", "/" + index + "/_settings");
+        request.setJsonEntity(objectMapper.writeValueAsString(settings));
+        restClient.performRequest(request);
+    }
+
+    @SneakyThrows
+    public void refreshIndex(String index) {
+        restClient.performRequest(new Request("POST", "/" + index + "/_refresh"));
+    }
+
+    @SneakyThrows
+    public void forceMergeIndex(String index, int maxNumSegments) {
+        var request = new Request("POST", "/" + index + "/_forcemerge");
+        request.addParameter("max_num_segments", String.valueOf(maxNumSegments));
+        restClient.performRequest(request);
     }
 
     @SneakyThrows
@@ -53,21 +165,45 @@ public class ElasticOperator {
         restClient.performRequest(request);
     }
 
-    @SneakyThrows
-    public void batchInsertDocument(List<ElasticDocument> elasticDocuments) {
-        Request request = new Request("POST", "/_bulk");
-        String bulkRequestBody = elasticDocuments.stream()
-                .map(elasticDocument -> "{ \"index\" : { \"_index\" : \"" + elasticDocument.getIndex() + "\", \"_id\" : \"" + elasticDocument.getId() + "\" } }\n" + elasticDocument.buildHasSourceIdDocumentJson(objectMapper) + "\n")
-                .reduce("", (a, b) -> a + b);
-        request.setJsonEntity(bulkRequestBody);
-        restClient.performRequest(request);
+    /**
+     * 批量写入文档，返回写入失败的文档
+     */
+    public List<BulkItemFailure> batchInsertDocument(List<ElasticDocument> elasticDocuments) {
+        return newBulkIndexer().index(elasticDocuments);
+    }
+
+    /**
+     * 同batchInsertDocument，externalVersion为true时以_source_id作为外部版本号写入
+     */
+    public List<BulkItemFailure> batchInsertDocument(List<ElasticDocument> elasticDocuments, boolean externalVersion) {
+        return newBulkIndexer(BulkIndexer.DEFAULT_MAX_BATCH_BYTES, BulkIndexer.DEFAULT_MAX_BATCH_DOCS, externalVersion).index(elasticDocuments);
     }
 
+    public BulkIndexer newBulkIndexer() {
+        return newBulkIndexer(BulkIndexer.DEFAULT_MAX_BATCH_BYTES, BulkIndexer.DEFAULT_MAX_BATCH_DOCS, false);
+    }
+
+    public BulkIndexer newBulkIndexer(int maxBatchBytes, int maxBatchDocs, boolean externalVersion) {
+        return new BulkIndexer(restClient, objectMapper, pipelineMetrics, maxBatchBytes, maxBatchDocs, externalVersion);
+    }
+
+    /**
+     * 以_source_id作为外部版本号写入，与迁移使用相同的规则，同一个_id总是保留最新的doc
+     * 版本冲突说明ES中已经是更新的doc，直接忽略
+     */
     @SneakyThrows
     public void createDocument(ElasticDocument elasticDocument) {
         var request = new Request("PUT", "/" + elasticDocument.getIndex() + "/_doc" + "/" + elasticDocument.getId());
-        request.setJsonEntity(elasticDocument.buildHasSourceIdDocumentJson(objectMapper));
-        restClient.performRequest(request);
+        request.addParameter("version", String.valueOf(elasticDocument.getSourceId()));
+        request.addParameter("version_type", "external_gte");
+        request.setJsonEntity(elasticDocument.buildHasSourceIdDocumentJson());
+        try {
+            restClient.performRequest(request);
+        } catch (ResponseException e) {
+            if (e.getResponse().getStatusLine().getStatusCode() != 409) {
+                throw e;
+            }
+        }
     }
 
     @SneakyThrows
@@ -85,27 +221,125 @@ public class ElasticOperator {
         }
     }
 
+    /**
+     * 一次请求获取多个文档，按ids的顺序返回，不存在的文档为Optional.empty()
+     */
     @SneakyThrows
-    public List<ElasticDocument> searchDocument(String index, String query) {
+    public List<Optional<ElasticDocument>> multiGetDocument(String index, List<String> ids) {
+        var request = new Request("POST", "/" + index + "/_mget");
+        request.setJsonEntity(objectMapper.writeValueAsString(Map.of("ids", ids)));
+        Response response = restClient.performRequest(request);
+        int statusCode = response.getStatusLine().getStatusCode();
+        if (statusCode >= 200 && statusCode < 300) {
+            var json = EntityUtils.toString(response.getEntity());
+            var multiGetResponse = objectMapper.readValue(json, MultiGetResponse.class);
+            var elasticDocuments = new ArrayList<Optional<ElasticDocument>>(ids.size());
+            for (DocResponse docResponse : multiGetResponse.getDocs()) {
+                if (docResponse.isFound()) {
+                    var docJson = objectMapper.writeValueAsString(docResponse.getSource());
+                    elasticDocuments.add(Optional.of(ElasticDocument.create(objectMapper, docResponse.getIndex(), docResponse.getId(), docJson)));
+                } else {
+                    elasticDocuments.add(Optional.empty());
+                }
+            }
+            return elasticDocuments;
+        } else {
+            throw new RuntimeException("Failed to perform request. Status code: " + statusCode);
+        }
+    }
+
+    @SneakyThrows
+    public List<RawHit> searchDocument(String index, String query) {
         var request = new Request("GET", "/" + index + "/_search");
         request.setJsonEntity(query);
+        var start = System.nanoTime();
         Response response = restClient.performRequest(request);
         int statusCode = response.getStatusLine().getStatusCode();
         if (statusCode >= 200 && statusCode < 300) {
-            // 从响应中获取内容
-            String responseBody = EntityUtils.toString(response.getEntity());
-            var searchResponse = objectMapper.readValue(responseBody, SearchResponse.class);
-            return searchResponse.getHits().getHits().stream().map(hitsItem -> {
-                try {
-                    var docJson = objectMapper.writeValueAsString(hitsItem.getSource());
-                    return ElasticDocument.builder().documentJson(docJson)
-                            .id(hitsItem.getId()).index(hitsItem.getIndex()).build();
-                } catch (JsonProcessingException e) {
-                    throw new RuntimeException(e);
-                }
-            }).collect(Collectors.toList());
+            // 直接从响应流中读取hits，_source原样保留
+            var hits = new ArrayList<RawHit>();
+            new SearchHitReader(objectMapper).read(response.getEntity().getContent(), hits::add);
+            pipelineMetrics.recordSearch(index, System.nanoTime() - start);
+            return hits;
         } else {
             throw new RuntimeException("Failed to perform request. Status code: " + statusCode);
         }
     }
+
+    /**
+     * 解析导出的查询，query、_source、post_filter等参数原样传给每一页的查询
+     * 分页由point in time和按_shard_doc排序的search_after控制，并且会返回所有结果，
+     * 因此不支持sort、from、size、search_after、pit和scroll，出现时直接拒绝
+     */
+    @SneakyThrows
+    public ObjectNode parseScrollSearch(String body) {
+        var search = body == null ? null : objectMapper.readTree(body);
+        if (search == null || search.isNull()) {
+            return objectMapper.createObjectNode();
+        }
+        if (!search.isObject()) {
+            throw new RuntimeException("Search body must be a json object");
+        }
+        for (String key : SCROLL_UNSUPPORTED_KEYS) {
+            if (search.has(key)) {
+                throw new RuntimeException("Search parameter " + key + " is not supported by export");
+            }
+        }
+        return (ObjectNode) search;
+    }
+
+    /**
+     * 使用point in time和search_after遍历查询的所有结果，每次只在内存中保留一页
+     * search需要先经过parseScrollSearch的检查
+     */
+    @SneakyThrows
+    public void scrollDocument(String index, ObjectNode search, int pageSize, Consumer<RawHit> hitConsumer) {
+        var pitId = openPointInTime(index);
+        try {
+            JsonNode searchAfter = null;
+            while (true) {
+                var body = search.deepCopy();
+                body.put("size", pageSize);
+                body.put("track_total_hits", false);
+                body.putObject("pit").put("id", pitId).put("keep_alive", POINT_IN_TIME_KEEP_ALIVE);
+                body.putArray("sort").addObject().put("_shard_doc", "asc");
+                if (searchAfter != null) {
+                    body.set("search_after", searchAfter);
+                }
+                var request = new Request("POST", "/_search");
+                request.setJsonEntity(objectMapper.writeValueAsString(body));
+                Response response = restClient.performRequest(request);
+                var searchHitReader = new SearchHitReader(objectMapper);
+                searchHitReader.read(response.getEntity().getContent(), hitConsumer);
+                if (searchHitReader.getPitId() != null) {
+                    pitId = searchHitReader.getPitId();
+                }
+                if (searchHitReader.getHitCount() < pageSize) {
+                    break;
+                }
+                searchAfter = searchHitReader.getLastSort();
+            }
+        } finally {
+            closePointInTime(pitId);
+        }
+    }
+
+    @SneakyThrows
+    private String openPointInTime(String index) {
+        var request = new Request("POST", "/" + index + "/_pit");
+        request.addParameter("keep_alive", POINT_IN_TIME_KEEP_ALIVE);
+        Response response = restClient.performRequest(request);
+        return objectMapper.readTree(EntityUtils.toString(response.getEntity())).get("id").asText();
+    }
+
+    private void closePointInTime(String pitId) {
+        try {
+            var request = new Request("DELETE", "/_pit");
+            request.setJsonEntity(objectMapper.writeValueAsString(Map.of("id", pitId)));
+            restClient.performRequest(request);
+        } catch (Exception e) {
+            // 过期后ES会自动回收
+            log.warn("Failed to close point in time", e);
+        }
+    }
 }
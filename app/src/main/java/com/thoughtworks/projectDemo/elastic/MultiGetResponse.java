@@ -0,0 +1,13 @@
+package com.thoughtworks.projectDemo.elastic;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class MultiGetResponse {
+
+    @JsonProperty("docs")
+    private List<DocResponse> docs;
+}
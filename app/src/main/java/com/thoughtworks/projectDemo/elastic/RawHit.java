@@ -0,0 +1,11 @@
+package com.thoughtworks.projectDemo.elastic;
+
+import lombok.Data;
+
+@Data
+public class RawHit {
+    private String id;
+    private String index;
+    // 去掉了_source_id的_source原文
+    private String source;
+}
@@ -0,0 +1,99 @@
+package com.thoughtworks.projectDemo.elastic;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.function.Consumer;
+
+/**
+ * 以流的方式读取_search的响应并逐个回调hit
+ * _source去掉_source_id后按token原样复制，不构建POJO或JsonNode
+ */
+public class SearchHitReader {
+    private final ObjectMapper objectMapper;
+    private final StringWriter sourceWriter = new StringWriter(1024);
+    @Getter
+    private String pitId;
+    // 最后一个hit的sort，用于search_after
+    @Getter
+    private JsonNode lastSort;
+    @Getter
+    private int hitCount;
+
+    public SearchHitReader(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public void read(InputStream content, Consumer<RawHit> hitConsumer) throws IOException {
+        try (var parser = objectMapper.getFactory().createParser(content)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new RuntimeException("Failed to parse search response");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                var fieldName = parser.currentName();
+                parser.nextToken();
+                if ("pit_id".equals(fieldName)) {
+                    pitId = parser.getText();
+                } else if ("hits".equals(fieldName)) {
+                    readHits(parser, hitConsumer);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    private void readHits(JsonParser parser, Consumer<RawHit> hitConsumer) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var fieldName = parser.currentName();
+            parser.nextToken();
+            if ("hits".equals(fieldName)) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    hitConsumer.accept(readHit(parser));
+                    hitCount++;
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private RawHit readHit(JsonParser parser) throws IOException {
+        var hit = new RawHit();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var fieldName = parser.currentName();
+            parser.nextToken();
+            switch (fieldName) {
+                case "_id" -> hit.setId(parser.getText());
+                case "_index" -> hit.setIndex(parser.getText());
+                case "_source" -> hit.setSource(copySource(parser));
+                case "sort" -> lastSort = objectMapper.readTree(parser);
+                default -> parser.skipChildren();
+            }
+        }
+        return hit;
+    }
+
+    private String copySource(JsonParser parser) throws IOException {
+        sourceWriter.getBuffer().setLength(0);
+        try (var generator = objectMapper.getFactory().createGenerator(sourceWriter)) {
+            generator.writeStartObject();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                if ("_source_id".equals(parser.currentName())) {
+                    parser.nextToken();
+                    parser.skipChildren();
+                    continue;
+                }
+                generator.copyCurrentStructure(parser);
+            }
+            generator.writeEndObject();
+        }
+        return sourceWriter.toString();
+    }
+}
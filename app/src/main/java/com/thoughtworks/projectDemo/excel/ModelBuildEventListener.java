@@ -2,139 +2,172 @@ package com.thoughtworks.projectDemo.excel;
 
 
 import com.alibaba.excel.context.AnalysisContext;
-import com.alibaba.excel.enums.ReadDefaultReturnEnum;
 import com.alibaba.excel.metadata.data.DataFormatData;
 import com.alibaba.excel.metadata.data.ReadCellData;
 import com.alibaba.excel.read.listener.IgnoreExceptionReadListener;
-import com.alibaba.excel.read.metadata.holder.ReadSheetHolder;
 import com.alibaba.excel.util.ConverterUtils;
 import com.alibaba.excel.util.DateUtils;
 import com.alibaba.excel.util.ListUtils;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.thoughtworks.projectDemo.model.PropertyModel;
+import lombok.SneakyThrows;
 
-import java.time.LocalDateTime;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.function.Consumer;
 
 /**
  * Convert to the object the user needs
+ * 表头保存为数组，每行的单元格放入复用的数组后直接写成JSON字节，不构建Map
+ * 每列出现过的类型用位掩码记录，读取结束后再转换为propertyMap
  *
  * @author jipengfei
  */
 public class ModelBuildEventListener implements IgnoreExceptionReadListener<Map<Integer, ReadCellData<?>>> {
+    private static final PropertyModel.TypeEnum[] TYPES = PropertyModel.TypeEnum.values();
     private final Integer batchCount;
-    private final Consumer<List<Object>> batchReadConsumer;
+    private final Consumer<List<byte[]>> batchReadConsumer;
     private final Consumer<Void> finishReadConsumer;
     private final Consumer<Map<String, Set<PropertyModel.TypeEnum>>> propertyMapConsumer;
-    private final Map<String, Set<PropertyModel.TypeEnum>> propertyMap = new HashMap<>();
-    private final Map<Integer, String> headerMap = new HashMap<>();
-    private List<Object> cachedDataList;
+    private final ByteArrayOutputStream rowBuffer = new ByteArrayOutputStream(1024);
+    private final JsonGenerator generator;
+    private String[] headers = new String[0];
+    // 每列出现过的类型，第n位对应TypeEnum的第n个值
+    private int[] columnTypes = new int[0];
+    private ReadCellData<?>[] rowCells = new ReadCellData<?>[0];
+    private List<byte[]> cachedDataList;
 
+    @SneakyThrows
     public ModelBuildEventListener(Integer batchCount,
+                                   ObjectMapper objectMapper,
                                    Consumer<Map<String, Set<PropertyModel.TypeEnum>>> propertyMapConsumer,
-                                   Consumer<List<Object>> batchReadConsumer,
+                                   Consumer<List<byte[]>> batchReadConsumer,
                                    Consumer<Void> finishReadConsumer) {
         this.batchCount = batchCount;
         this.batchReadConsumer = batchReadConsumer;
         this.finishReadConsumer = finishReadConsumer;
         this.propertyMapConsumer = propertyMapConsumer;
         this.cachedDataList = ListUtils.newArrayListWithExpectedSize(batchCount);
+        this.generator = objectMapper.getFactory().createGenerator(rowBuffer);
+        this.generator.setRootValueSeparator(null);
     }
 
     @Override
+    @SneakyThrows
     public void invoke(Map<Integer, ReadCellData<?>> cellDataMap, AnalysisContext context) {
-        ReadSheetHolder readSheetHolder = context.readSheetHolder();
-        context.readRowHolder().setCurrentRowAnalysisResult(buildNoModel(cellDataMap, readSheetHolder, context));
+        Arrays.fill(rowCells, null);
+        for (Map.Entry<Integer, ReadCellData<?>> entry : cellDataMap.entrySet()) {
+            int column = entry.getKey();
+            if (column < headers.length && headers[column] != null) {
+                rowCells[column] = entry.getValue();
+                recordProperty(column, entry.getValue());
+            }
+        }
+        cachedDataList.add(buildRow(context));
+        if (cachedDataList.size() >= batchCount) {
+            batchReadConsumer.accept(cachedDataList);
+            cachedDataList = ListUtils.newArrayListWithExpectedSize(batchCount);
+        }
     }
 
     @Override
     public void invokeHead(Map<Integer, ReadCellData<?>> headMap, AnalysisContext context) {
-        headMap.forEach((k, v) -> {
-            headerMap.put(k, headMap.get(k).getStringValue());
-        });
+        var size = headMap.keySet().stream().mapToInt(Integer::intValue).max().orElse(-1) + 1;
+        headers = new String[size];
+        headMap.forEach((k, v) -> headers[k] = v.getStringValue());
+        columnTypes = new int[size];
+        rowCells = new ReadCellData<?>[size];
     }
 
-    private void recordProperty(String key, ReadCellData<?> cellData) {
-        Set<PropertyModel.TypeEnum> set = propertyMap.computeIfAbsent(key, k -> new HashSet<>());
+    private void recordProperty(int column, ReadCellData<?> cellData) {
         switch (cellData.getType()) {
             case STRING:
             case DIRECT_STRING:
             case ERROR:
             case EMPTY:
-                set.add(PropertyModel.TypeEnum.TEXT);
+                columnTypes[column] |= 1 << PropertyModel.TypeEnum.TEXT.ordinal();
                 break;
             case BOOLEAN:
-                set.add(PropertyModel.TypeEnum.BOOL);
+                columnTypes[column] |= 1 << PropertyModel.TypeEnum.BOOL.ordinal();
                 break;
             case NUMBER:
-                DataFormatData dataFormatData = cellData.getDataFormatData();
-                if (dataFormatData != null && DateUtils.isADateFormat(dataFormatData.getIndex(),
-                        dataFormatData.getFormat())) {
-                    set.add(PropertyModel.TypeEnum.DATE);
+                if (isDateFormat(cellData)) {
+                    columnTypes[column] |= 1 << PropertyModel.TypeEnum.DATE.ordinal();
                 } else {
-                    set.add(PropertyModel.TypeEnum.NUMBER);
+                    columnTypes[column] |= 1 << PropertyModel.TypeEnum.NUMBER.ordinal();
                 }
                 break;
             case DATE:
-                set.add(PropertyModel.TypeEnum.DATE);
+                columnTypes[column] |= 1 << PropertyModel.TypeEnum.DATE.ordinal();
                 break;
             default:
                 break;
         }
     }
 
-    private Object buildNoModel(Map<Integer, ReadCellData<?>> cellDataMap, ReadSheetHolder readSheetHolder,
-                                AnalysisContext context) {
-        Map<String, Object> map = new HashMap<>();
-        headerMap.forEach((k, v) -> {
-            map.put(v, null);
-        });
-        for (Map.Entry<Integer, ReadCellData<?>> entry : cellDataMap.entrySet()) {
-            Integer key = entry.getKey();
-            ReadCellData<?> cellData = entry.getValue();
-            recordProperty(headerMap.get(key), cellData);
-            ReadCellData<?> convertedReadCellData = convertReadCellData(cellData,
-                    context.readWorkbookHolder().getReadDefaultReturn(), readSheetHolder, context, key);
-            map.put(headerMap.get(key), convertedReadCellData.getData());
-        }
-        cachedDataList.add(map);
-        if (cachedDataList.size() >= batchCount) {
-            batchReadConsumer.accept(cachedDataList);
-            cachedDataList = ListUtils.newArrayListWithExpectedSize(batchCount);
+    private boolean isDateFormat(ReadCellData<?> cellData) {
+        DataFormatData dataFormatData = cellData.getDataFormatData();
+        return dataFormatData != null && DateUtils.isADateFormat(dataFormatData.getIndex(), dataFormatData.getFormat());
+    }
+
+    /**
+     * 按表头的顺序写出一行，没有值的列写null
+     */
+    private byte[] buildRow(AnalysisContext context) throws IOException {
+        rowBuffer.reset();
+        generator.writeStartObject();
+        for (int column = 0; column < headers.length; column++) {
+            if (headers[column] == null) {
+                continue;
+            }
+            generator.writeFieldName(headers[column]);
+            writeCell(rowCells[column], column, context);
         }
-        return map;
+        generator.writeEndObject();
+        generator.flush();
+        return rowBuffer.toByteArray();
     }
 
-    private ReadCellData convertReadCellData(ReadCellData<?> cellData, ReadDefaultReturnEnum readDefaultReturn,
-                                             ReadSheetHolder readSheetHolder, AnalysisContext context, Integer columnIndex) {
-        Class<?> classGeneric;
+    private void writeCell(ReadCellData<?> cellData, int column, AnalysisContext context) throws IOException {
+        if (cellData == null) {
+            generator.writeNull();
+            return;
+        }
         switch (cellData.getType()) {
             case STRING:
             case DIRECT_STRING:
             case ERROR:
+                generator.writeString(cellData.getStringValue());
+                break;
             case EMPTY:
-                classGeneric = String.class;
+                generator.writeNull();
                 break;
             case BOOLEAN:
-                classGeneric = Boolean.class;
+                generator.writeBoolean(cellData.getBooleanValue());
                 break;
             case NUMBER:
-                DataFormatData dataFormatData = cellData.getDataFormatData();
-                if (dataFormatData != null && DateUtils.isADateFormat(dataFormatData.getIndex(),
-                        dataFormatData.getFormat())) {
-                    classGeneric = LocalDateTime.class;
+                if (isDateFormat(cellData)) {
+                    var dateTime = DateUtils.getLocalDateTime(cellData.getNumberValue().doubleValue(),
+                            context.readWorkbookHolder().globalConfiguration().getUse1904windowing());
+                    generator.writeString(dateTime.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
                 } else {
-                    classGeneric = Long.class;
+                    generator.writeNumber(cellData.getNumberValue().longValue());
                 }
                 break;
             default:
-                classGeneric = ConverterUtils.defaultClassGeneric;
+                // 其他少见的类型仍然交给EasyExcel转换
+                generator.writeObject(convertReadCellData(cellData, context, column).getData());
                 break;
         }
+    }
 
+    private ReadCellData convertReadCellData(ReadCellData<?> cellData, AnalysisContext context, Integer columnIndex) {
         return (ReadCellData) ConverterUtils.convertToJavaObject(cellData, null, ReadCellData.class,
-                classGeneric, null, readSheetHolder.converterMap(), context, context.readRowHolder().getRowIndex(),
-                columnIndex);
+                ConverterUtils.defaultClassGeneric, null, context.readSheetHolder().converterMap(), context,
+                context.readRowHolder().getRowIndex(), columnIndex);
     }
 
     @Override
@@ -143,6 +176,22 @@ public class ModelBuildEventListener implements IgnoreExceptionReadListener<Map<
             batchReadConsumer.accept(cachedDataList);
         }
         finishReadConsumer.accept(null);
-        propertyMapConsumer.accept(propertyMap);
+        propertyMapConsumer.accept(buildPropertyMap());
+    }
+
+    private Map<String, Set<PropertyModel.TypeEnum>> buildPropertyMap() {
+        Map<String, Set<PropertyModel.TypeEnum>> propertyMap = new HashMap<>();
+        for (int column = 0; column < headers.length; column++) {
+            if (headers[column] == null || columnTypes[column] == 0) {
+                continue;
+            }
+            var types = propertyMap.computeIfAbsent(headers[column], k -> EnumSet.noneOf(PropertyModel.TypeEnum.class));
+            for (PropertyModel.TypeEnum type : TYPES) {
+                if ((columnTypes[column] & (1 << type.ordinal())) != 0) {
+                    types.add(type);
+                }
+            }
+        }
+        return propertyMap;
     }
 }
@@ -0,0 +1,62 @@
+package com.thoughtworks.projectDemo.ingest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 按COPY的text格式转义写入的字节，UTF-8的多字节字符中不会出现这几个ASCII字节，可以直接逐字节处理
+ * flush不会传递给下层，避免每写一行就把COPY的缓冲区发送给数据库
+ */
+public class CopyTextEscapingOutputStream extends OutputStream {
+    private final OutputStream out;
+
+    public CopyTextEscapingOutputStream(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        switch (b) {
+            case '\\' -> {
+                out.write('\\');
+                out.write('\\');
+            }
+            case '\n' -> {
+                out.write('\\');
+                out.write('n');
+            }
+            case '\r' -> {
+                out.write('\\');
+                out.write('r');
+            }
+            case '\t' -> {
+                out.write('\\');
+                out.write('t');
+            }
+            default -> out.write(b);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        var start = off;
+        var end = off + len;
+        for (int i = off; i < end; i++) {
+            var c = b[i];
+            if (c == '\\' || c == '\n' || c == '\r' || c == '\t') {
+                out.write(b, start, i - start);
+                write(c);
+                start = i + 1;
+            }
+        }
+        out.write(b, start, end - start);
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
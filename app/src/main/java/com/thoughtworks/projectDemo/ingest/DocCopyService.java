@@ -0,0 +1,80 @@
+package com.thoughtworks.projectDemo.ingest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+import org.jooq.DSLContext;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 通过COPY FROM STDIN把文档直接写入collection对应的doc分区表
+ * 绕过逐行的insert
+ */
+@Service
+@RequiredArgsConstructor
+public class DocCopyService {
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private final DSLContext dslContext;
+    private final ObjectMapper objectMapper;
+    // 已经确认存在的分区表，分区表不会被删除所以不需要失效
+    private final Map<Long, String> partitionTables = new ConcurrentHashMap<>();
+
+    /**
+     * 确保collection对应的分区表存在并返回表名，每个collection只会查询一次
+     */
+    public String ensurePartition(Long collectionId) {
+        return partitionTables.computeIfAbsent(collectionId, id ->
+                (String) dslContext.fetchValue("select ensure_doc_partition(?)", id));
+    }
+
+    /**
+     * 写入一批文档，返回写入的行数
+     */
+    @SneakyThrows
+    public long copyDocs(Long collectionId, String batchId, List<?> docs) {
+        var jsonDocs = new ArrayList<byte[]>(docs.size());
+        for (Object doc : docs) {
+            jsonDocs.add(objectMapper.writeValueAsBytes(doc));
+        }
+        return copyJsonDocs(collectionId, batchId, jsonDocs);
+    }
+
+    /**
+     * 写入一批已经序列化为JSON的文档，返回写入的行数
+     */
+    public long copyJsonDocs(Long collectionId, String batchId, List<byte[]> jsonDocs) {
+        if (jsonDocs.isEmpty()) {
+            return 0;
+        }
+        var sql = "COPY " + ensurePartition(collectionId) + " (collection_id, batch_id, source) FROM STDIN";
+        var collectionIdBytes = String.valueOf(collectionId).getBytes(StandardCharsets.UTF_8);
+        var batchIdBytes = batchId.getBytes(StandardCharsets.UTF_8);
+        return dslContext.connectionResult(connection -> {
+            var copyOut = new PGCopyOutputStream(connection.unwrap(PGConnection.class), sql, COPY_BUFFER_SIZE);
+            try {
+                var escapingOut = new CopyTextEscapingOutputStream(copyOut);
+                for (byte[] jsonDoc : jsonDocs) {
+                    copyOut.write(collectionIdBytes);
+                    copyOut.write('\t');
+                    escapingOut.write(batchIdBytes);
+                    copyOut.write('\t');
+                    escapingOut.write(jsonDoc);
+                    copyOut.write('\n');
+                }
+                return copyOut.endCopy();
+            } finally {
+                if (copyOut.isActive()) {
+                    copyOut.cancelCopy();
+                }
+            }
+        });
+    }
+}
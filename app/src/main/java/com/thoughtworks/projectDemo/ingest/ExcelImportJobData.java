@@ -0,0 +1,16 @@
+package com.thoughtworks.projectDemo.ingest;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExcelImportJobData {
+    private Long collectionId;
+    private String batchId;
+    private String fileName;
+}
@@ -0,0 +1,21 @@
+package com.thoughtworks.projectDemo.ingest;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "excel-import")
+public class ExcelImportProperties {
+    // 同时进行的导入数，超过时拒绝新的导入请求
+    private int concurrentImports = 2;
+    // 每批通过一次COPY写入的行数
+    private int batchSize = 1000;
+    // 并发写入数据库的线程数
+    private int writerThreads = 4;
+    // 解析和写入之间最多堆积的批次数，超过后解析线程会被阻塞
+    private int queueCapacity = 8;
+    // 每写入多少个批次记录一次进度
+    private int progressLogBatches = 20;
+}
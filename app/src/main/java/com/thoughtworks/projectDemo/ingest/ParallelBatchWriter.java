@@ -0,0 +1,95 @@
+package com.thoughtworks.projectDemo.ingest;
+
+import lombok.SneakyThrows;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * 一个生产者把批次放入有界队列，多个写入线程并发消费
+ * 队列满时submit会阻塞，任一批次写入失败后submit和finish都会抛出这个异常
+ */
+public class ParallelBatchWriter<T> {
+    private static final Object END = new Object();
+    private final BlockingQueue<Object> queue;
+    private final ExecutorService executor;
+    private final List<Future<?>> writers = new ArrayList<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    public ParallelBatchWriter(int writerThreads, int queueCapacity, String threadNamePrefix, Consumer<T> batchWriter) {
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.executor = Executors.newFixedThreadPool(writerThreads, new CustomizableThreadFactory(threadNamePrefix));
+        for (int i = 0; i < writerThreads; i++) {
+            writers.add(executor.submit(() -> {
+                writeLoop(batchWriter);
+                return null;
+            }));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeLoop(Consumer<T> batchWriter) throws InterruptedException {
+        while (true) {
+            var item = queue.take();
+            if (item == END) {
+                return;
+            }
+            if (failure.get() != null) {
+                // 已经失败了，继续取出剩下的批次避免生产者一直阻塞
+                continue;
+            }
+            try {
+                batchWriter.accept((T) item);
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        }
+    }
+
+    @SneakyThrows
+    public void submit(T batch) {
+        checkFailure();
+        queue.put(batch);
+    }
+
+    /**
+     * 等待所有已提交的批次写入完成
+     */
+    @SneakyThrows
+    public void finish() {
+        try {
+            for (int i = 0; i < writers.size(); i++) {
+                queue.put(END);
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+            checkFailure();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 放弃还没有写入的批次
+     */
+    public void abort() {
+        executor.shutdownNow();
+    }
+
+    @SneakyThrows
+    private void checkFailure() {
+        var e = failure.get();
+        if (e != null) {
+            throw e;
+        }
+    }
+}
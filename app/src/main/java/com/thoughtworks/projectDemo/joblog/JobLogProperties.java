@@ -0,0 +1,19 @@
+package com.thoughtworks.projectDemo.joblog;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "job-log")
+public class JobLogProperties {
+    // 缓冲区中不同的日志条数达到该值时立即写入
+    private int flushSize = 500;
+    // 缓冲区最长的停留时间
+    private Duration flushInterval = Duration.ofSeconds(1);
+    // 合并后的错误日志最多记录的文档id数
+    private int sampleDocIds = 5;
+}
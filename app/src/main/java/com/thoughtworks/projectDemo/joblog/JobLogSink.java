@@ -0,0 +1,142 @@
+package com.thoughtworks.projectDemo.joblog;
+
+import com.thoughtworks.projectDemo.enums.LogType;
+import com.thoughtworks.projectDemo.migration.DocProcessException;
+import com.thoughtworks.projectDemo.tables.daos.JobLogDao;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.thoughtworks.projectDemo.Tables.JOB_LOG;
+
+/**
+ * 在内存中缓冲任务日志，按条数或时间用一条多行insert写入job_log
+ * 同一个刷新周期内相同任务、类型和内容的日志合并为一条，记录次数和部分文档id
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class JobLogSink {
+    private final JobLogDao jobLogDao;
+    private final JobLogProperties jobLogProperties;
+    private final ScheduledExecutorService flushExecutor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("job-log-flush-"));
+    // 保持写入的先后顺序
+    private final Map<EntryKey, Entry> pending = new LinkedHashMap<>();
+
+    @PostConstruct
+    public void start() {
+        var interval = jobLogProperties.getFlushInterval().toMillis();
+        flushExecutor.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        flushExecutor.shutdown();
+        flushQuietly();
+    }
+
+    public void add(Long jobId, LogType logType, String log) {
+        add(jobId, logType, log, null);
+    }
+
+    /**
+     * 记录错误日志，DocProcessException按原因合并，其他异常按message合并
+     */
+    public void addError(Long jobId, Exception e) {
+        if (e instanceof DocProcessException docProcessException) {
+            add(jobId, LogType.Error, docProcessException.getMessage(), docProcessException.getSourceId());
+        } else {
+            add(jobId, LogType.Error, e.getMessage(), null);
+        }
+    }
+
+    private void add(Long jobId, LogType logType, String log, Long sourceId) {
+        boolean full;
+        synchronized (pending) {
+            pending.computeIfAbsent(new EntryKey(jobId, logType, log), key -> new Entry(key, new ArrayList<>()))
+                    .record(sourceId, jobLogProperties.getSampleDocIds());
+            full = pending.size() >= jobLogProperties.getFlushSize();
+        }
+        if (full) {
+            // 写入交给刷新线程，不阻塞调用方
+            flushExecutor.execute(this::flushQuietly);
+        }
+    }
+
+    /**
+     * 立即把缓冲区中的日志写入数据库，任务结束前调用以保证日志完整
+     */
+    public void flush() {
+        List<Entry> entries;
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            entries = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+        var insert = jobLogDao.ctx().insertInto(JOB_LOG, JOB_LOG.JOB_ID, JOB_LOG.LOG_TYPE, JOB_LOG.LOG);
+        for (Entry entry : entries) {
+            insert = insert.values(entry.key.jobId, entry.key.logType, entry.format());
+        }
+        insert.execute();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.warn("Failed to flush job log", e);
+        }
+    }
+
+    private record EntryKey(Long jobId, LogType logType, String log) {
+    }
+
+    private static final class Entry {
+        private final EntryKey key;
+        private final List<Long> sampleSourceIds;
+        private int count;
+
+        private Entry(EntryKey key, List<Long> sampleSourceIds) {
+            this.key = key;
+            this.sampleSourceIds = sampleSourceIds;
+        }
+
+        private void record(Long sourceId, int maxSamples) {
+            count++;
+            if (sourceId != null && sampleSourceIds.size() < maxSamples) {
+                sampleSourceIds.add(sourceId);
+            }
+        }
+
+        private String format() {
+            var builder = new StringBuilder();
+            if (!sampleSourceIds.isEmpty()) {
+                builder.append(count == 1 ? "Doc " : "Docs ")
+                        .append(sampleSourceIds.stream().map(String::valueOf).collect(Collectors.joining(", ")));
+                if (count > sampleSourceIds.size()) {
+                    builder.append(" ...");
+                }
+                builder.append(": ");
+            }
+            builder.append(key.log);
+            if (count > 1) {
+                builder.append(" (x").append(count).append(")");
+            }
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.thoughtworks.projectDemo.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 写入、验证、_bulk、查询各环节的指标，通过actuator的prometheus端点暴露
+ * index标签都使用逻辑索引名，避免每次重建产生新的物理索引名导致标签数量无限增长
+ */
+@Component
+@RequiredArgsConstructor
+public class PipelineMetrics {
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * 一批文档的验证耗时和通过、拒绝的文档数
+     */
+    public void recordVerify(String index, int accepted, int rejected, long nanos) {
+        Timer.builder("doc.verify")
+                .description("验证一批文档的耗时")
+                .tag("index", index)
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        verifyCounter(index, "accepted").increment(accepted);
+        verifyCounter(index, "rejected").increment(rejected);
+    }
+
+    private Counter verifyCounter(String index, String result) {
+        return Counter.builder("doc.verify.docs")
+                .description("验证的文档数")
+                .tag("index", index)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 一个_bulk请求的耗时、字节数和文档数
+     */
+    public void recordBulk(long bytes, int docs, long nanos) {
+        Timer.builder("elastic.bulk.requests")
+                .description("_bulk请求的耗时")
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("elastic.bulk.request.size")
+                .baseUnit("bytes")
+                .register(meterRegistry)
+                .record(bytes);
+        DistributionSummary.builder("elastic.bulk.request.docs")
+                .register(meterRegistry)
+                .record(docs);
+    }
+
+    /**
+     * esIndexName是ES返回的物理索引名，去掉@之后的时间戳作为标签
+     */
+    public void recordBulkItemFailure(String esIndexName, String type) {
+        var separator = esIndexName == null ? -1 : esIndexName.lastIndexOf('@');
+        Counter.builder("elastic.bulk.item.failures")
+                .description("_bulk中写入失败的文档数")
+                .tag("index", separator < 0 ? String.valueOf(esIndexName) : esIndexName.substring(0, separator))
+                .tag("type", type == null ? "unknown" : type)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    public void recordSearch(String index, long nanos) {
+        Timer.builder("elastic.search")
+                .description("_search请求的耗时")
+                .tag("index", index)
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 迁移时从doc表读取一页的耗时
+     */
+    public void recordDocPageFetch(String index, long nanos) {
+        Timer.builder("doc.page.fetch")
+                .description("从doc表读取一页的耗时")
+                .tag("index", index)
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 任务从投递到被消费者处理之间的等待时间
+     */
+    public void recordJobQueueTime(String jobType, long millis) {
+        Timer.builder("job.queue.time")
+                .description("任务在队列中等待的时间")
+                .tag("type", jobType)
+                .register(meterRegistry)
+                .record(Math.max(millis, 0), TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,22 @@
+package com.thoughtworks.projectDemo.migration;
+
+import lombok.Getter;
+
+/**
+ * 单个文档验证或写入ES失败，message中不包含文档id，相同原因的失败可以合并记录
+ */
+@Getter
+public class DocProcessException extends RuntimeException {
+    // 在doc数据库里的原始文档id
+    private final Long sourceId;
+
+    public DocProcessException(Long sourceId, String message) {
+        super(message);
+        this.sourceId = sourceId;
+    }
+
+    public DocProcessException(Long sourceId, String message, Throwable cause) {
+        super(message, cause);
+        this.sourceId = sourceId;
+    }
+}
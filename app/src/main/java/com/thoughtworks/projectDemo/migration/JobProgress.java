@@ -0,0 +1,59 @@
+package com.thoughtworks.projectDemo.migration;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 保存在job.progress中的任务进度
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class JobProgress {
+    // 从doc表读取的文档数
+    private long docsRead;
+    // 验证通过的文档数
+    private long docsVerified;
+    // 验证或写入ES失败的文档数
+    private long docsRejected;
+    // 成功写入ES的文档数
+    private long docsIndexed;
+    // 发送给ES的字节数
+    private long bytesSent;
+    // 已经写入ES的最后一个docId
+    private Long cursorDocId;
+    // 任务处理的DOC.ID范围，toDocId为null代表没有上限
+    private Long fromDocId;
+    private Long toDocId;
+    // 从开始到现在平均每秒写入ES的文档数
+    private double docsPerSecond;
+    // 各阶段累计耗时，读取和转换在后台线程中与写入同时进行
+    private long readMillis;
+    private long transformMillis;
+    private long indexMillis;
+    private long elapsedMillis;
+    // 按DOC.ID范围的完成比例估算的剩余时间，没有上限时为null
+    private Long etaSeconds;
+
+    /**
+     * 合并子任务的进度，吞吐量相加，剩余时间取最长的子任务
+     */
+    public JobProgress merge(JobProgress other) {
+        return JobProgress.builder()
+                .docsRead(docsRead + other.docsRead)
+                .docsVerified(docsVerified + other.docsVerified)
+                .docsRejected(docsRejected + other.docsRejected)
+                .docsIndexed(docsIndexed + other.docsIndexed)
+                .bytesSent(bytesSent + other.bytesSent)
+                .docsPerSecond(docsPerSecond + other.docsPerSecond)
+                .readMillis(readMillis + other.readMillis)
+                .transformMillis(transformMillis + other.transformMillis)
+                .indexMillis(indexMillis + other.indexMillis)
+                .elapsedMillis(Math.max(elapsedMillis, other.elapsedMillis))
+                .etaSeconds(etaSeconds == null || other.etaSeconds == null ? null : Math.max(etaSeconds, other.etaSeconds))
+                .build();
+    }
+}
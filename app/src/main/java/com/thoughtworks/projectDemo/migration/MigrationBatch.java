@@ -0,0 +1,18 @@
+package com.thoughtworks.projectDemo.migration;
+
+import com.thoughtworks.projectDemo.elastic.ElasticDocument;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+@Builder
+public class MigrationBatch {
+    // 这一批中最大的docId，写入成功后可以作为下一次的起点
+    private Long lastDocId;
+    // 从doc表读取的行数
+    private int readCount;
+    // 验证并转换后的文档
+    private List<ElasticDocument> documents;
+}
@@ -0,0 +1,10 @@
+package com.thoughtworks.projectDemo.migration;
+
+/**
+ * 迁移在写入过程中被取消，例如同一个父任务的其他子任务已经失败
+ */
+public class MigrationCancelledException extends RuntimeException {
+    public MigrationCancelledException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,88 @@
+package com.thoughtworks.projectDemo.migration;
+
+import com.thoughtworks.projectDemo.elastic.ElasticDocument;
+import com.thoughtworks.projectDemo.tables.pojos.Doc;
+import lombok.Builder;
+import lombok.SneakyThrows;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 迁移流水线，读取、转换、写入三个阶段同时进行
+ * 读取线程按DOC.ID分页读取，转换在有界的线程池中执行，写入在调用线程上按读取的顺序执行，
+ * 阶段之间通过有界队列形成背压，内存中最多只保留queueCapacity个批次
+ */
+@Builder
+public class MigrationPipeline {
+    private static final Future<MigrationBatch> END = CompletableFuture.completedFuture(null);
+
+    private final int pageSize;
+    private final int transformThreads;
+    private final int queueCapacity;
+    // 读取docId大于参数的一页数据，需要按docId升序返回
+    private final Function<Long, List<Doc>> reader;
+    private final Function<List<Doc>, List<ElasticDocument>> transformer;
+    private final Consumer<MigrationBatch> writer;
+
+    @SneakyThrows
+    public void run(Long startDocId) {
+        var queue = new ArrayBlockingQueue<Future<MigrationBatch>>(queueCapacity);
+        var readExecutor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("migration-read-"));
+        var transformExecutor = Executors.newFixedThreadPool(transformThreads, new CustomizableThreadFactory("migration-transform-"));
+        try {
+            readExecutor.execute(() -> read(startDocId, queue, transformExecutor));
+            while (true) {
+                var future = queue.take();
+                if (future == END) {
+                    break;
+                }
+                writer.accept(future.get());
+            }
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        } finally {
+            readExecutor.shutdownNow();
+            transformExecutor.shutdownNow();
+        }
+    }
+
+    private void read(Long startDocId, BlockingQueue<Future<MigrationBatch>> queue, ExecutorService transformExecutor) {
+        Future<MigrationBatch> last;
+        try {
+            var cursor = startDocId;
+            while (true) {
+                var docs = reader.apply(cursor);
+                if (docs.isEmpty()) {
+                    break;
+                }
+                var lastDocId = docs.get(docs.size() - 1).getId();
+                queue.put(transformExecutor.submit(() -> MigrationBatch.builder()
+                        .lastDocId(lastDocId)
+                        .readCount(docs.size())
+                        .documents(transformer.apply(docs))
+                        .build()));
+                if (docs.size() < pageSize) {
+                    break;
+                }
+                cursor = lastDocId;
+            }
+            last = END;
+        } catch (InterruptedException e) {
+            // 写入线程已经退出
+            Thread.currentThread().interrupt();
+            return;
+        } catch (Exception e) {
+            // 交给写入线程抛出
+            last = CompletableFuture.failedFuture(e);
+        }
+        try {
+            queue.put(last);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
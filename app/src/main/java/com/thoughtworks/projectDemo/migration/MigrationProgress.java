@@ -0,0 +1,77 @@
+package com.thoughtworks.projectDemo.migration;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 迁移过程中各阶段的计数，读取、转换、写入线程同时更新
+ */
+public class MigrationProgress {
+    private final Long fromDocId;
+    private final Long toDocId;
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong docsRead = new AtomicLong();
+    private final AtomicLong docsVerified = new AtomicLong();
+    private final AtomicLong docsRejected = new AtomicLong();
+    private final AtomicLong docsIndexed = new AtomicLong();
+    private final AtomicLong readNanos = new AtomicLong();
+    private final AtomicLong transformNanos = new AtomicLong();
+    private final AtomicLong indexNanos = new AtomicLong();
+    private volatile long bytesSent;
+    private volatile Long cursorDocId;
+
+    public MigrationProgress(Long fromDocId, Long toDocId) {
+        this.fromDocId = fromDocId;
+        this.toDocId = toDocId;
+        this.cursorDocId = fromDocId;
+    }
+
+    public void read(int count, long nanos) {
+        docsRead.addAndGet(count);
+        readNanos.addAndGet(nanos);
+    }
+
+    public void transformed(int verified, int rejected, long nanos) {
+        docsVerified.addAndGet(verified);
+        docsRejected.addAndGet(rejected);
+        transformNanos.addAndGet(nanos);
+    }
+
+    /**
+     * 只在写入线程上调用
+     */
+    public void indexed(int indexed, int failed, long bytesSent, Long cursorDocId, long nanos) {
+        docsIndexed.addAndGet(indexed);
+        docsRejected.addAndGet(failed);
+        indexNanos.addAndGet(nanos);
+        this.bytesSent = bytesSent;
+        this.cursorDocId = cursorDocId;
+    }
+
+    public JobProgress snapshot() {
+        var elapsedNanos = System.nanoTime() - startNanos;
+        var cursor = cursorDocId;
+        Long etaSeconds = null;
+        if (toDocId != null && cursor != null && fromDocId != null && toDocId > fromDocId && cursor > fromDocId) {
+            // DOC.ID在集合内不一定连续，按范围估算只是近似值
+            var done = (double) (cursor - fromDocId) / (toDocId - fromDocId);
+            etaSeconds = (long) (elapsedNanos / 1e9 * (1 - done) / done);
+        }
+        return JobProgress.builder()
+                .docsRead(docsRead.get())
+                .docsVerified(docsVerified.get())
+                .docsRejected(docsRejected.get())
+                .docsIndexed(docsIndexed.get())
+                .bytesSent(bytesSent)
+                .cursorDocId(cursor)
+                .fromDocId(fromDocId)
+                .toDocId(toDocId)
+                .docsPerSecond(elapsedNanos == 0 ? 0 : docsIndexed.get() * 1e9 / elapsedNanos)
+                .readMillis(TimeUnit.NANOSECONDS.toMillis(readNanos.get()))
+                .transformMillis(TimeUnit.NANOSECONDS.toMillis(transformNanos.get()))
+                .indexMillis(TimeUnit.NANOSECONDS.toMillis(indexNanos.get()))
+                .elapsedMillis(TimeUnit.NANOSECONDS.toMillis(elapsedNanos))
+                .etaSeconds(etaSeconds)
+                .build();
+    }
+}
@@ -0,0 +1,42 @@
+package com.thoughtworks.projectDemo.migration;
+
+import com.thoughtworks.projectDemo.elastic.BulkIndexer;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "migration")
+public class MigrationProperties {
+    // 每次从doc表读取的行数
+    private int pageSize = 2000;
+    // 验证并转换文档的线程数
+    private int transformThreads = Runtime.getRuntime().availableProcessors();
+    // 读取和写入之间最多堆积的批次数，超过后读取线程会被阻塞
+    private int queueCapacity = 4;
+    // 使用流式验证，不构建JsonNode，适合只映射了少量字段的宽文档
+    private boolean streamingVerify = false;
+    // 每写入多少个批次记录一次迁移进度
+    private int checkpointBatches = 10;
+    // 读取doc时在数据库中只保留index映射了的字段
+    private boolean projectSource = true;
+    // 重新导入时按DOC.ID拆分的最大子任务数
+    private int shardCount = 8;
+    // 每个节点同时处理的迁移任务数
+    private int listenerConcurrency = 2;
+    // 轮询_reindex任务进度的间隔
+    private Duration reindexPollInterval = Duration.ofSeconds(5);
+    // 把迁移进度写入job.progress的间隔
+    private Duration progressInterval = Duration.ofSeconds(5);
+    // 重新导入时把目标索引切换为批量导入模式，关闭刷新和副本，结束后恢复
+    private boolean bulkLoad = true;
+    // 批量导入成功后把目标索引合并为一个段
+    private boolean bulkLoadForceMerge = false;
+    // 单个_bulk请求的最大字节数
+    private int bulkMaxBytes = BulkIndexer.DEFAULT_MAX_BATCH_BYTES;
+    // 单个_bulk请求的最大文档数
+    private int bulkMaxDocs = BulkIndexer.DEFAULT_MAX_BATCH_DOCS;
+}
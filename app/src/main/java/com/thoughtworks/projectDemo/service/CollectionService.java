@@ -1,18 +1,19 @@
 package com.thoughtworks.projectDemo.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thoughtworks.projectDemo.ingest.DocCopyService;
 import com.thoughtworks.projectDemo.model.CollectionModel;
 import com.thoughtworks.projectDemo.model.PropertyModel;
 import com.thoughtworks.projectDemo.tables.daos.CollectionDao;
 import com.thoughtworks.projectDemo.tables.daos.DocDao;
 import com.thoughtworks.projectDemo.tables.pojos.Collection;
-import com.thoughtworks.projectDemo.tables.pojos.Doc;
+import com.thoughtworks.projectDemo.tables.pojos.Job;
 import lombok.AllArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.multipart.MultipartFile;
 
-import java.io.InputStream;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.List;
 import java.util.Optional;
 
@@ -25,9 +26,9 @@ public class CollectionService {
     private final CollectionDao collectionDao;
     private final DocDao docDao;
     private final CollectionPropertyService collectionPropertyService;
-    private final ObjectMapper objectMapper;
     private final IndexService indexService;
-    private final ExcelService excelService;
+    private final ExcelImportService excelImportService;
+    private final DocCopyService docCopyService;
 
     @Transactional
     public void deleteCollection(String collectionName) {
@@ -70,17 +71,8 @@ public class CollectionService {
     }
 
     private void insertDoc(List<Object> batchDoc, String batchId, Long collectionId) {
-        docDao.insert(batchDoc.stream().map(it -> {
-            var doc = new Doc();
-            doc.setBatchId(batchId);
-            try {
-                doc.setSource(objectMapper.writeValueAsString(it));
-            } catch (JsonProcessingException e) {
-                throw new RuntimeException(e);
-            }
-            doc.setCollectionId(collectionId);
-            return doc;
-        }).toList());
+        // 通过COPY直接写入分区表，不经过doc表上逐行执行的触发器
+        docCopyService.copyDocs(collectionId, batchId, batchDoc);
     }
 
     private void notifyIndexAppend(Long collectionId) {
@@ -109,6 +101,8 @@ public class CollectionService {
         collection.setName(collectionModel.getName());
         collection.setDesc(collectionModel.getDesc());
         collectionDao.insert(collection);
+        // doc按collection_id做LIST分区，创建collection时同时创建分区
+        docCopyService.ensurePartition(collection.getId());
         if (collectionModel.getIndices() != null) {
             collectionModel.getIndices().forEach(index -> {
                 index.setCollectionName(collectionModel.getName());
@@ -127,16 +121,16 @@ public class CollectionService {
         return collectionDao.fetchOptional(COLLECTION.NAME, collectionName).isPresent();
     }
 
-    public void uploadExcel(String collectionName, InputStream inputStream) {
+    /**
+     * 异步导入excel，返回导入任务
+     */
+    public Job uploadExcel(String collectionName, MultipartFile file) throws IOException {
         var collection = mustGetCollection(collectionName);
-        var batchId = String.valueOf(System.currentTimeMillis());
-        excelService.readExcel(inputStream, 100, propertyMap -> {
-            collectionPropertyService.appendCollectionProperty(collection.getId(), propertyMap);
-        }, batchDoc -> {
-            insertDoc(batchDoc, batchId, collection.getId());
-        }, finish -> {
-            notifyIndexAppend(collection.getId());
-        });
+        // 请求结束后上传的文件会被清理，先保存到临时文件再异步导入
+        var tempFile = Files.createTempFile("excel-import-", ".tmp");
+        file.transferTo(tempFile);
+        return excelImportService.submit(collection.getId(), tempFile, file.getOriginalFilename(),
+                () -> notifyIndexAppend(collection.getId()));
     }
 
     public List<PropertyModel> getProperties(String collectionName) {
@@ -0,0 +1,132 @@
+package com.thoughtworks.projectDemo.service;
+
+import com.thoughtworks.projectDemo.enums.JobStatus;
+import com.thoughtworks.projectDemo.enums.JobType;
+import com.thoughtworks.projectDemo.enums.LogType;
+import com.thoughtworks.projectDemo.ingest.DocCopyService;
+import com.thoughtworks.projectDemo.ingest.ExcelImportJobData;
+import com.thoughtworks.projectDemo.ingest.ExcelImportProperties;
+import com.thoughtworks.projectDemo.ingest.ParallelBatchWriter;
+import com.thoughtworks.projectDemo.tables.pojos.Job;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 异步导入excel，解析线程把批次放入有界队列，多个写入线程通过COPY并发写入doc
+ * 上传的文件保存在本节点的临时文件中，所以任务在本节点执行而不是通过MQ分发，
+ * 节点停止时未完成的任务标记为失败，节点崩溃时任务会停留在Running，需要重新上传
+ * 同时进行的导入数受concurrentImports限制，超过时拒绝请求
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ExcelImportService {
+    private final JobService jobService;
+    private final ExcelService excelService;
+    private final DocCopyService docCopyService;
+    private final CollectionPropertyService collectionPropertyService;
+    private final ExcelImportProperties excelImportProperties;
+    private ExecutorService importExecutor;
+    private Semaphore importPermits;
+
+    @PostConstruct
+    public void start() {
+        importExecutor = Executors.newFixedThreadPool(excelImportProperties.getConcurrentImports(), new CustomizableThreadFactory("excel-import-"));
+        importPermits = new Semaphore(excelImportProperties.getConcurrentImports());
+    }
+
+    /**
+     * 中断正在进行的导入，让它们把任务标记为失败后再退出
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        importExecutor.shutdownNow();
+        if (!importExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("Excel import executor did not terminate in time");
+        }
+    }
+
+    /**
+     * 创建导入任务并立即返回，onFinish在所有数据写入后执行
+     * 达到并发上限时删除文件并抛出RejectedExecutionException，不会创建任务
+     */
+    public Job submit(Long collectionId, Path file, String fileName, Runnable onFinish) {
+        if (!importPermits.tryAcquire()) {
+            deleteFile(file);
+            throw new RejectedExecutionException("Too many concurrent excel imports");
+        }
+        var jobData = ExcelImportJobData.builder()
+                .collectionId(collectionId)
+                .batchId(String.valueOf(System.currentTimeMillis()))
+                .fileName(fileName).build();
+        Job job;
+        try {
+            job = jobService.createJob(JobType.ExcelImport, jobData);
+            importExecutor.execute(() -> {
+                try {
+                    importExcel(job.getId(), jobData, file, onFinish);
+                } finally {
+                    deleteFile(file);
+                    importPermits.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            deleteFile(file);
+            importPermits.release();
+            throw e;
+        }
+        return job;
+    }
+
+    private void deleteFile(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (Exception e) {
+            log.warn("Failed to delete {}", file, e);
+        }
+    }
+
+    private void importExcel(Long jobId, ExcelImportJobData jobData, Path file, Runnable onFinish) {
+        jobService.updateJobStatus(jobId, JobStatus.Running);
+        var importedRows = new AtomicLong();
+        var writtenBatches = new AtomicLong();
+        var writer = new ParallelBatchWriter<List<byte[]>>(excelImportProperties.getWriterThreads(),
+                excelImportProperties.getQueueCapacity(), "excel-import-writer-", batch -> {
+            docCopyService.copyJsonDocs(jobData.getCollectionId(), jobData.getBatchId(), batch);
+            var rows = importedRows.addAndGet(batch.size());
+            if (writtenBatches.incrementAndGet() % excelImportProperties.getProgressLogBatches() == 0) {
+                jobService.addJobLog(jobId, LogType.Info, "Imported " + rows + " rows");
+            }
+        });
+        try (var inputStream = Files.newInputStream(file)) {
+            excelService.readExcel(inputStream, excelImportProperties.getBatchSize(), propertyMap -> {
+                collectionPropertyService.appendCollectionProperty(jobData.getCollectionId(), propertyMap);
+            }, writer::submit, finish -> {
+            });
+            writer.finish();
+            jobService.addJobLog(jobId, LogType.Info, "Imported " + importedRows.get() + " rows");
+            onFinish.run();
+        } catch (Exception e) {
+            log.error("Import excel {} failed", jobData.getFileName(), e);
+            writer.abort();
+            jobService.addJobLog(jobId, LogType.Error, e.getMessage());
+            jobService.updateJobStatus(jobId, JobStatus.Failed);
+            return;
+        }
+        jobService.updateJobStatus(jobId, JobStatus.Succeed);
+    }
+}
@@ -1,6 +1,7 @@
 package com.thoughtworks.projectDemo.service;
 
 import com.alibaba.excel.EasyExcel;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.thoughtworks.projectDemo.excel.ModelBuildEventListener;
 import com.thoughtworks.projectDemo.model.PropertyModel;
 import lombok.AllArgsConstructor;
@@ -15,16 +16,17 @@ import java.util.function.Consumer;
 @Service
 @AllArgsConstructor
 public class ExcelService {
+    private final ObjectMapper objectMapper;
 
     public void readExcel(InputStream inputStream,
                           Integer batchCount,
                           Consumer<Map<String, Set<PropertyModel.TypeEnum>>> propertyMapConsumer,
-                          Consumer<List<Object>> batchReadConsumer,
+                          Consumer<List<byte[]>> batchReadConsumer,
                           Consumer<Void> finishReadConsumer) {
         EasyExcel.read(inputStream)
                 .useDefaultListener(false)
                 .sheet()
                 .headRowNumber(1)
-                .registerReadListener(new ModelBuildEventListener(batchCount, propertyMapConsumer, batchReadConsumer, finishReadConsumer)).doRead();
+                .registerReadListener(new ModelBuildEventListener(batchCount, objectMapper, propertyMapConsumer, batchReadConsumer, finishReadConsumer)).doRead();
     }
 }
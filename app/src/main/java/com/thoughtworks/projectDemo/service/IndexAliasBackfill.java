@@ -0,0 +1,41 @@
+package com.thoughtworks.projectDemo.service;
+
+import com.thoughtworks.projectDemo.elastic.ElasticOperator;
+import com.thoughtworks.projectDemo.enums.IndexStatus;
+import com.thoughtworks.projectDemo.tables.daos.IndexDao;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * 读请求通过与index同名的别名访问，启动时为引入别名之前创建的索引补建别名
+ * 在接收请求之前执行，正在构建新索引的迁移由完成时的切换创建别名，这里跳过以免别名同时指向新旧两个索引
+ * 没有构建索引的迁移(追加或引入构建索引之前的任务)直接写入当前索引，完成时不会切换别名，所以同样在这里补建
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IndexAliasBackfill {
+    private final IndexDao indexDao;
+    private final ElasticOperator elasticOperator;
+
+    @PostConstruct
+    public void backfill() {
+        for (var index : indexDao.findAll()) {
+            if (index.getEsIndexName() == null
+                    || (index.getStatus() == IndexStatus.Migrating && index.getBuildingEsIndexName() != null)) {
+                continue;
+            }
+            try {
+                if (!elasticOperator.existsAlias(index.getName())) {
+                    elasticOperator.swapAlias(index.getName(), null, index.getEsIndexName());
+                    log.info("Created alias {} for index {}", index.getName(), index.getEsIndexName());
+                }
+            } catch (Exception e) {
+                // ES不可用时不阻止启动，下次启动时重试
+                log.warn("Failed to create alias {} for index {}", index.getName(), index.getEsIndexName(), e);
+            }
+        }
+    }
+}
@@ -1,36 +1,72 @@
 package com.thoughtworks.projectDemo.service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.thoughtworks.projectDemo.Tables;
+import com.fasterxml.jackson.databind.util.RawValue;
+import com.thoughtworks.projectDemo.cache.IndexMetadataCache;
 import com.thoughtworks.projectDemo.convert.DataMapper;
+import com.thoughtworks.projectDemo.elastic.BulkItemFailure;
 import com.thoughtworks.projectDemo.elastic.ElasticDocument;
 import com.thoughtworks.projectDemo.elastic.ElasticOperator;
+import com.thoughtworks.projectDemo.elastic.RawHit;
 import com.thoughtworks.projectDemo.enums.IndexStatus;
+import com.thoughtworks.projectDemo.metrics.PipelineMetrics;
+import com.thoughtworks.projectDemo.migration.DocProcessException;
+import com.thoughtworks.projectDemo.migration.JobProgress;
+import com.thoughtworks.projectDemo.migration.MigrationCancelledException;
+import com.thoughtworks.projectDemo.migration.MigrationPipeline;
+import com.thoughtworks.projectDemo.migration.MigrationProgress;
+import com.thoughtworks.projectDemo.migration.MigrationProperties;
+import com.thoughtworks.projectDemo.model.BulkUpdateResultModel;
 import com.thoughtworks.projectDemo.model.DocumentModel;
 import com.thoughtworks.projectDemo.model.IndexModel;
 import com.thoughtworks.projectDemo.model.MappingModel;
+import com.thoughtworks.projectDemo.model.MultiGetDocumentModel;
 import com.thoughtworks.projectDemo.model.PropertyModel;
 import com.thoughtworks.projectDemo.tables.daos.*;
 import com.thoughtworks.projectDemo.tables.pojos.*;
+import com.thoughtworks.projectDemo.verify.CompiledIndexSchema;
+import com.thoughtworks.projectDemo.verify.StreamingDocVerifier;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.JSONB;
+import org.jooq.impl.DSL;
+import org.jooq.impl.SQLDataType;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static com.thoughtworks.projectDemo.Tables.INDEX_DOC_RECORD;
 import static com.thoughtworks.projectDemo.Tables.INDEX_PROPERTY;
+import static com.thoughtworks.projectDemo.Tables.JOB;
 import static com.thoughtworks.projectDemo.tables.Collection.COLLECTION;
 import static com.thoughtworks.projectDemo.tables.Doc.DOC;
 import static com.thoughtworks.projectDemo.tables.Index.INDEX;
@@ -39,6 +75,14 @@ import static com.thoughtworks.projectDemo.tables.Index.INDEX;
 @RequiredArgsConstructor
 @Slf4j
 public class IndexService {
+    private static final int EXPORT_PAGE_SIZE = 1000;
+    private static final int EXPORT_PIPE_SIZE = 64 * 1024;
+    // 同时进行的导出数，超过时拒绝新的导出请求
+    private static final int EXPORT_THREADS = 4;
+    private static final Map<String, String> BULK_LOAD_INDEX_SETTINGS = Map.of(
+            "index.refresh_interval", "-1",
+            "index.number_of_replicas", "0",
+            "index.translog.durability", "async");
     private final IndexDao indexDao;
     private final IndexPropertyDao indexPropertyDao;
     private final IndexDocRecordDao indexDocRecordDao;
@@ -47,10 +91,28 @@ public class IndexService {
     private final ElasticOperator elasticOperator;
     private final VerifyDocService verifyDocService;
     private final JobService jobService;
+    private final PipelineMetrics pipelineMetrics;
     private final DataMapper dataMapper;
     private final CollectionDao collectionDao;
+    private final MigrationProperties migrationProperties;
+    private final IndexMetadataCache indexMetadataCache;
+    private final ExecutorService exportExecutor = new ThreadPoolExecutor(EXPORT_THREADS, EXPORT_THREADS, 0L, TimeUnit.MILLISECONDS,
+            new SynchronousQueue<>(), new CustomizableThreadFactory("index-export-"));
 
+    @PreDestroy
+    public void stop() {
+        exportExecutor.shutdownNow();
+    }
+
+    /**
+     * 从缓存中获取，返回的对象是共享的，不能修改
+     * 需要根据状态做修改的地方使用loadIndexModel
+     */
     public IndexModel mustGetIndexModel(String indexName) {
+        return indexMetadataCache.get(indexName, this::loadIndexModel);
+    }
+
+    private IndexModel loadIndexModel(String indexName) {
         var index = mustGetIndex(indexName);
         return buildIndexModel(List.of(index)).get(0);
     }
@@ -98,6 +160,8 @@ public class IndexService {
         }
         elasticOperator.deleteIndex(index.getEsIndexName());
         indexDao.delete(index);
+        verifyDocService.evict(index.getId());
+        indexMetadataCache.invalidate(indexName);
         if (!retainData) {
             // 不保留数据则会删除doc中关于这个index修改的数据
             docDao.ctx().deleteFrom(DOC)
@@ -112,8 +176,29 @@ public class IndexService {
                 .execute();
     }
 
-    private String getEsIndexName(String indexName) {
-        return mustGetIndex(indexName).getEsIndexName();
+    /**
+     * 读请求通过与index同名的ES别名访问，重建期间别名仍指向旧的物理索引，重建完成后原子地切换到新索引
+     */
+    private String getReadIndexName(String indexName) {
+        return mustGetIndexModel(indexName).getName();
+    }
+
+    /**
+     * 迁移中的索引只有在重建时可以写入，此时会同时写入新旧两个物理索引
+     * MigrateFailed的索引允许写入：失败时构建索引已被清除，只写入当前的物理索引，
+     * doc表中的新数据会在重新激活、追加或重建时再次迁移，外部版本号保证不会被旧数据覆盖
+     */
+    private void checkWritable(IndexModel indexModel) {
+        var status = IndexStatus.valueOf(indexModel.getStatus());
+        switch (status) {
+            case Migrating -> {
+                if (indexModel.getBuildingEsIndexName() == null) {
+                    throw new RuntimeException("Index is migrating, can not insert or update document");
+                }
+            }
+            case Inactivated, Activated, MigrateFailed -> {
+            }
+        }
     }
 
     public void createIndex(IndexModel indexModel) {
@@ -137,7 +222,7 @@ public class IndexService {
         // 写入ES,es使用的是esIndex
         var esIndex = indexModel.getName() + "@" + System.currentTimeMillis();
         indexModel.setEsIndexName(esIndex);
-        elasticOperator.createIndex(esIndex);
+        elasticOperator.createIndex(esIndex, indexModel.getName());
         // 写入数据库
         var newIndex = new Index();
         newIndex.setName(indexModel.getName());
@@ -183,11 +268,13 @@ public class IndexService {
         assert index.getId() != null;
         index.setDesc(indexModel.getDesc());
         indexDao.update(index);
+        indexMetadataCache.invalidate(index.getName());
         if (indexModel.getMapping() == null) {
             return Optional.empty();
         }
         // 更新mapping
         checkIndexProperties(indexModel);
+        verifyDocService.evict(index.getId());
         var oldProperties = indexPropertyDao.fetchByIndexId(index.getId());
         var oldPropertiesMap = oldProperties.stream().collect(Collectors.toMap(IndexProperty::getName, it -> it));
         var updateProperties = new ArrayList<IndexProperty>();
@@ -197,7 +284,9 @@ public class IndexService {
         // 2. docIdPart改变需要recreate，这会导致es历史数据中的_id不对
         // 3. type改变需要recreate，这会导致es中的mapping不兼容性的改变
         // 4. 缩减的是require的字段或者是docIdPart需要recreate
+        // 只是把非docIdPart的字段放宽为TEXT时，ES中已有的文档仍然合法，_id也不变，使用ES的_reindex代替recreate
         var needRecreate = false;
+        var widenedFields = new ArrayList<String>();
 
         for (PropertyModel propertyModel : indexModel.getMapping().getProperties()) {
             if (propertyModel.getEnable()) {
@@ -209,9 +298,16 @@ public class IndexService {
                             dataMapper.toIndexProperty(propertyModel)
                                     .setIndexId(index.getId()));
                 } else {
-                    if (old.getDocIdPart() != propertyModel.getDocIdPart() || !old.getType().equals(propertyModel.getType().name())) {
-                        // 如果docIdPart改变或者type改变了则需要recreate
+                    if (!Objects.equals(old.getDocIdPart(), propertyModel.getDocIdPart())) {
+                        // 如果docIdPart改变了则需要recreate
                         needRecreate = true;
+                    } else if (!old.getType().equals(propertyModel.getType().name())) {
+                        if (isWidenedToText(propertyModel)) {
+                            widenedFields.add(propertyModel.getName());
+                        } else {
+                            // 其他的type改变需要重新验证数据库中的doc
+                            needRecreate = true;
+                        }
                     }
                     // 更新mapping字段，因为被移出了所以重新放到更新队列中
                     updateProperties.add(dataMapper.toIndexProperty(propertyModel).setId(old.getId())
@@ -271,14 +367,28 @@ public class IndexService {
             if (!insertProperties.isEmpty()) {
                 indexPropertyDao.insert(insertProperties);
             }
+            if (!index.getStatus().equals(IndexStatus.Inactivated) && !widenedFields.isEmpty()) {
+                return Optional.of(reindexIndex(indexModel.getName(), widenedFields));
+            }
             return Optional.empty();
         }
     }
 
+    /**
+     * 任何类型的值都可以转换为TEXT，没有枚举约束时转换后的文档一定能通过验证
+     */
+    private boolean isWidenedToText(PropertyModel propertyModel) {
+        if (propertyModel.getType() != PropertyModel.TypeEnum.TEXT || Boolean.TRUE.equals(propertyModel.getDocIdPart())) {
+            return false;
+        }
+        var restrict = propertyModel.getRestrict();
+        return restrict == null || restrict.getEnumerateList() == null || restrict.getEnumerateList().isEmpty();
+    }
+
     @SneakyThrows
     public DocumentModel getDocument(String indexName, String docId) {
-        var esIndexName = getEsIndexName(indexName);
-        var elasticDocument = elasticOperator.getDocument(esIndexName, docId);
+        var readIndexName = getReadIndexName(indexName);
+        var elasticDocument = elasticOperator.getDocument(readIndexName, docId);
         var doc = new DocumentModel();
         doc.setIndex(indexName);
         doc.setSource(objectMapper.readValue(elasticDocument.getDocumentJson(), Object.class));
@@ -286,18 +396,46 @@ public class IndexService {
         return doc;
     }
 
+    /**
+     * 一次性获取多个文档，按docIds的顺序返回，不存在的文档found为false
+     */
+    @SneakyThrows
+    public List<MultiGetDocumentModel> multiGetDocument(String indexName, List<String> docIds) {
+        if (docIds.isEmpty()) {
+            return List.of();
+        }
+        var readIndexName = getReadIndexName(indexName);
+        var elasticDocuments = elasticOperator.multiGetDocument(readIndexName, docIds);
+        var documents = new ArrayList<MultiGetDocumentModel>(docIds.size());
+        for (int i = 0; i < docIds.size(); i++) {
+            var doc = new MultiGetDocumentModel();
+            doc.setIndex(indexName);
+            doc.setId(docIds.get(i));
+            var elasticDocument = elasticDocuments.get(i);
+            doc.setFound(elasticDocument.isPresent());
+            if (elasticDocument.isPresent()) {
+                doc.setSource(objectMapper.readValue(elasticDocument.get().getDocumentJson(), Object.class));
+            }
+            documents.add(doc);
+        }
+        return documents;
+    }
+
     /**
      * 可以修改也可以新增
      */
     public void updateDocument(String indexName, String docId, Object document) throws JsonProcessingException {
         var indexModel = mustGetIndexModel(indexName);
-        if (indexModel.getStatus().equals(IndexStatus.Migrating.name())) {
-            throw new RuntimeException("Index is migrating, can not insert or update document");
-        }
+        checkWritable(indexModel);
         // 获取ES上的文档
         var elasticDoc = elasticOperator.getDocument(indexModel.getEsIndexName(), docId);
         // 获取数据库中原始文档
-        var docOriginalSource = docDao.fetchOptionalById(elasticDoc.getSourceId()).orElseThrow(() -> new RuntimeException("Doc not found")).getSource();
+        var docOriginalSource = docDao.ctx().select(DOC.SOURCE).from(DOC)
+                .where(DOC.COLLECTION_ID.eq(indexModel.getCollectionId()))
+                .and(DOC.ID.eq(elasticDoc.getSourceId()))
+                .fetchOptional(DOC.SOURCE)
+                .orElseThrow(() -> new RuntimeException("Doc not found"))
+                .data();
         // 验证做出的修改是否合法
         var documentUpdateSource = objectMapper.writeValueAsString(document);
         var source = verifyDocService.verifyDoc(indexModel, documentUpdateSource);
@@ -308,106 +446,348 @@ public class IndexService {
         });
         var modifySource = objectMapper.writeValueAsString(docOriginalObjectNode);
         // 插入数据库，对于doc表来说不存在更新的操作，只有插入
-        var newDoc = new Doc();
-        newDoc.setSource(modifySource);
-        newDoc.setCollectionId(indexModel.getId());
-        newDoc.setModifyByIndex(indexModel.getId());
-        docDao.insert(newDoc);
-        // 将转换后的文档更新或者插入ES
-        elasticOperator.createDocument(ElasticDocument.builder().index(indexModel.getEsIndexName()).id(docId).documentJson(source).build());
+        var newDocId = docDao.ctx().insertInto(DOC, DOC.COLLECTION_ID, DOC.SOURCE, DOC.MODIFY_BY_INDEX)
+                .values(indexModel.getCollectionId(), JSONB.valueOf(modifySource), indexModel.getId())
+                .returning(DOC.ID)
+                .fetchOne(DOC.ID);
+        // 将转换后的文档更新或者插入ES，新doc的id作为外部版本号，迁移稍后写入的旧doc不会覆盖这次修改
+        var elasticDocument = ElasticDocument.builder().index(indexModel.getEsIndexName()).id(docId).sourceId(newDocId).documentJson(source).build();
+        elasticOperator.createDocument(elasticDocument);
+        if (indexModel.getBuildingEsIndexName() != null) {
+            // 重建期间同时写入正在构建的索引，切换后不会丢失这段时间的修改
+            elasticOperator.createDocument(elasticDocument.toBuilder().index(indexModel.getBuildingEsIndexName()).build());
+        }
+    }
+
+    /**
+     * 批量修改或新增，规则与updateDocument相同
+     * ES文档通过一次_mget获取，原始文档通过一次IN查询获取，合并后的文档一次插入数据库，转换后的文档一次_bulk写入ES
+     */
+    @SneakyThrows
+    public List<BulkUpdateResultModel> bulkUpdateDocument(String indexName, List<DocumentModel> documents) {
+        if (documents.isEmpty()) {
+            return List.of();
+        }
+        var indexModel = mustGetIndexModel(indexName);
+        checkWritable(indexModel);
+        var schema = verifyDocService.compile(indexModel);
+        // 获取ES上的文档
+        var elasticDocs = elasticOperator.multiGetDocument(indexModel.getEsIndexName(),
+                documents.stream().map(DocumentModel::getId).toList());
+        // 获取数据库中原始文档
+        var sourceIds = elasticDocs.stream().flatMap(Optional::stream).map(ElasticDocument::getSourceId).distinct().toArray(Long[]::new);
+        var docOriginalSources = new HashMap<Long, String>();
+        docDao.ctx().select(DOC.ID, DOC.SOURCE).from(DOC)
+                .where(DOC.COLLECTION_ID.eq(indexModel.getCollectionId()))
+                .and(DOC.ID.in(sourceIds))
+                .forEach(record -> docOriginalSources.put(record.value1(), record.value2() == null ? null : record.value2().data()));
+        var results = new ArrayList<BulkUpdateResultModel>(documents.size());
+        var newDocs = new ArrayList<Doc>();
+        // 与newDocs一一对应，插入数据库后填入新的doc id
+        var updateElasticDocs = new ArrayList<ElasticDocument>();
+        for (int i = 0; i < documents.size(); i++) {
+            var document = documents.get(i);
+            var result = new BulkUpdateResultModel().id(document.getId()).success(false);
+            results.add(result);
+            try {
+                var elasticDoc = elasticDocs.get(i).orElseThrow(() -> new RuntimeException("Document not found"));
+                var docOriginalSource = docOriginalSources.get(elasticDoc.getSourceId());
+                if (docOriginalSource == null) {
+                    throw new RuntimeException("Doc not found");
+                }
+                // 验证做出的修改是否合法
+                var documentUpdateNode = objectMapper.valueToTree(document.getSource());
+                var verifiedNode = schema.verify(documentUpdateNode, objectMapper.createObjectNode());
+                // 合并修改到数据库中原始的文档中，确保字段不会丢失
+                var docOriginalObjectNode = objectMapper.convertValue(objectMapper.readTree(docOriginalSource), ObjectNode.class);
+                documentUpdateNode.fields().forEachRemaining(entry -> {
+                    docOriginalObjectNode.replace(entry.getKey(), entry.getValue());
+                });
+                newDocs.add(new Doc()
+                        .setSource(JSONB.valueOf(objectMapper.writeValueAsString(docOriginalObjectNode)))
+                        .setCollectionId(indexModel.getCollectionId())
+                        .setModifyByIndex(indexModel.getId()));
+                updateElasticDocs.add(ElasticDocument.builder()
+                        .index(indexModel.getEsIndexName())
+                        .id(document.getId())
+                        .documentJson(objectMapper.writeValueAsString(verifiedNode))
+                        .build());
+                result.setSuccess(true);
+            } catch (Exception e) {
+                result.setError(e.getMessage());
+            }
+        }
+        if (newDocs.isEmpty()) {
+            return results;
+        }
+        // 插入数据库，对于doc表来说不存在更新的操作，只有插入
+        var insert = docDao.ctx().insertInto(DOC, DOC.COLLECTION_ID, DOC.SOURCE, DOC.MODIFY_BY_INDEX);
+        for (Doc newDoc : newDocs) {
+            insert = insert.values(newDoc.getCollectionId(), newDoc.getSource(), newDoc.getModifyByIndex());
+        }
+        // 按values的顺序返回新的doc id，ES中的_source_id指向合并后的新文档，再次修改时在它的基础上合并
+        var newDocIds = insert.returning(DOC.ID).fetch(DOC.ID);
+        var writeElasticDocs = new ArrayList<ElasticDocument>(updateElasticDocs.size() * 2);
+        for (int i = 0; i < updateElasticDocs.size(); i++) {
+            var updateElasticDoc = updateElasticDocs.get(i).toBuilder().sourceId(newDocIds.get(i)).build();
+            writeElasticDocs.add(updateElasticDoc);
+            if (indexModel.getBuildingEsIndexName() != null) {
+                // 重建期间同时写入正在构建的索引
+                writeElasticDocs.add(updateElasticDoc.toBuilder().index(indexModel.getBuildingEsIndexName()).build());
+            }
+        }
+        // 将转换后的文档更新或者插入ES，与迁移一样以新doc的id作为外部版本号
+        // 失败按(index, id)区分，正在构建的索引写入失败不影响当前索引的结果
+        var failures = elasticOperator.batchInsertDocument(writeElasticDocs, true).stream()
+                .collect(Collectors.toMap(it -> it.getIndex() + "/" + it.getId(), BulkItemFailure::getReason, (a, b) -> a));
+        results.stream().filter(BulkUpdateResultModel::getSuccess).forEach(it -> {
+            var failure = failures.get(indexModel.getEsIndexName() + "/" + it.getId());
+            var buildingFailure = indexModel.getBuildingEsIndexName() == null ? null
+                    : failures.get(indexModel.getBuildingEsIndexName() + "/" + it.getId());
+            if (failure != null) {
+                it.setSuccess(false);
+                it.setError(failure);
+            } else if (buildingFailure != null) {
+                // 当前索引已经写入成功，只提示正在构建的索引没有写入
+                it.setError("Failed to write building index: " + buildingFailure);
+            }
+        });
+        return results;
     }
 
     public List<ElasticDocument> processInsertDocument(IndexModel indexModel,
                                                        List<ElasticDocument> batchDoc,
                                                        Boolean ignoreError,
                                                        Consumer<Exception> exceptionConsumer) {
-        var docIdPart = indexModel.getMapping().getProperties().stream().filter(PropertyModel::getDocIdPart).map(PropertyModel::getName).sorted().toList();
-        if (docIdPart.isEmpty()) {
+        var schema = verifyDocService.compile(indexModel);
+        if (!schema.hasDocIdPart()) {
             throw new RuntimeException("Index doc id part is not exists, you need to set one property as doc id part.");
         }
-        var verifyBatchDoc = new ArrayList<ElasticDocument>();
-        batchDoc.forEach(it -> {
-            var edBuilder = ElasticDocument.builder();
-            // 验证并转换
-            try {
-                edBuilder.documentJson(verifyDocService.verifyDoc(indexModel, it.getDocumentJson()));
-                var id = docIdPart.stream().map(propertyName -> {
-                    var value = "";
-                    try {
-                        var sourceJsonObject = objectMapper.readTree(it.getDocumentJson());
-                        var valueNode = sourceJsonObject.get(propertyName);
-                        if (valueNode != null) {
-                            value = valueNode.asText();
-                        }
-                    } catch (JsonProcessingException e) {
-                        throw new RuntimeException(e);
+        // 流式验证的缓冲区在这一批文档中复用
+        var streamingVerifier = migrationProperties.isStreamingVerify() ? new StreamingDocVerifier(objectMapper) : null;
+        var verifyBatchDoc = new ArrayList<ElasticDocument>(batchDoc.size());
+        var rejected = 0;
+        var start = System.nanoTime();
+        try {
+            for (ElasticDocument it : batchDoc) {
+                try {
+                    if (streamingVerifier != null) {
+                        verifyBatchDoc.add(streamingVerifier.verify(schema, indexModel.getEsIndexName(), it));
+                    } else {
+                        verifyBatchDoc.add(verifyDocument(schema, indexModel.getEsIndexName(), it));
                     }
-                    return value;
-                }).collect(Collectors.joining("-"));
-                edBuilder.id(id);
-                edBuilder.index(indexModel.getEsIndexName());
-                edBuilder.sourceId(it.getSourceId());
-            } catch (Exception e) {
-                if (!ignoreError) {
+                } catch (Exception e) {
+                    rejected++;
+                    if (!ignoreError) {
+                        throw e;
+                    } else {
+                        exceptionConsumer.accept(new DocProcessException(it.getSourceId(), e.getMessage(), e));
+                    }
+                }
+            }
+        } finally {
+            pipelineMetrics.recordVerify(indexModel.getName(), verifyBatchDoc.size(), rejected, System.nanoTime() - start);
+        }
+        return verifyBatchDoc;
+    }
+
+    /**
+     * 每个文档只解析一次，验证和生成id都基于同一棵树
+     */
+    @SneakyThrows
+    private ElasticDocument verifyDocument(CompiledIndexSchema schema, String esIndexName, ElasticDocument source) {
+        var sourceNode = objectMapper.readTree(source.getDocumentJson());
+        // 验证并转换
+        var verifiedNode = schema.verify(sourceNode, objectMapper.createObjectNode());
+        return ElasticDocument.builder()
+                .documentJson(objectMapper.writeValueAsString(verifiedNode))
+                .id(schema.buildDocId(sourceNode))
+                .index(esIndexName)
+                .sourceId(source.getSourceId())
+                .build();
+    }
+
+    /**
+     * 导出查询的所有结果，返回的流中每行是一个DocumentModel的JSON
+     * 后台线程边读取ES的分页边写入管道，调用方关闭流时导出线程随之结束
+     */
+    public InputStream exportDocument(String indexName, String body) throws IOException {
+        var readIndexName = getReadIndexName(indexName);
+        // 不支持的查询参数在返回响应之前拒绝
+        var search = elasticOperator.parseScrollSearch(body);
+        var inputStream = new ExportInputStream();
+        var outputStream = new PipedOutputStream(inputStream);
+        exportExecutor.execute(() -> {
+            try (outputStream; var generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                // 每行之间的换行由我们自己写入
+                generator.setRootValueSeparator(null);
+                try {
+                    elasticOperator.scrollDocument(readIndexName, search, EXPORT_PAGE_SIZE,
+                            hit -> writeExportLine(generator, indexName, hit));
+                } catch (Exception e) {
+                    // 必须在关闭管道之前记录
+                    inputStream.fail(e);
                     throw e;
-                } else {
-                    exceptionConsumer.accept(e);
                 }
+            } catch (Exception e) {
+                log.error("Export index {} failed", indexName, e);
             }
-            verifyBatchDoc.add(edBuilder.build());
         });
-        return verifyBatchDoc;
+        return inputStream;
+    }
+
+    /**
+     * 导出失败时读取方读完已经写入的数据后收到IOException，响应被中断，客户端不会得到截断的200
+     */
+    private static class ExportInputStream extends PipedInputStream {
+        private volatile Exception failure;
+
+        ExportInputStream() {
+            super(EXPORT_PIPE_SIZE);
+        }
+
+        void fail(Exception e) {
+            failure = e;
+        }
+
+        @Override
+        public synchronized int read() throws IOException {
+            var b = super.read();
+            if (b < 0) {
+                throwIfFailed();
+            }
+            return b;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) throws IOException {
+            var n = super.read(b, off, len);
+            if (n < 0) {
+                throwIfFailed();
+            }
+            return n;
+        }
+
+        private void throwIfFailed() throws IOException {
+            if (failure != null) {
+                throw new IOException("Export failed: " + failure.getMessage(), failure);
+            }
+        }
+    }
+
+    @SneakyThrows
+    private void writeExportLine(JsonGenerator generator, String indexName, RawHit hit) {
+        generator.writeStartObject();
+        generator.writeStringField("id", hit.getId());
+        generator.writeStringField("index", indexName);
+        generator.writeFieldName("source");
+        generator.writeRawValue(hit.getSource());
+        generator.writeEndObject();
+        generator.writeRaw('\n');
     }
 
     public List<DocumentModel> searchDocument(String indexName, String body) {
-        var index = mustGetIndex(indexName);
-        var elasticDocuments = elasticOperator.searchDocument(index.getEsIndexName(), body);
-        return elasticDocuments.stream().map(elasticDocument -> {
+        var hits = elasticOperator.searchDocument(getReadIndexName(indexName), body);
+        return hits.stream().map(hit -> {
             var doc = new DocumentModel();
             doc.setIndex(indexName);
-            doc.setId(elasticDocument.getId());
-            try {
-                doc.setSource(objectMapper.readValue(elasticDocument.getDocumentJson(), Object.class));
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            }
+            doc.setId(hit.getId());
+            // _source按原文输出，不再反序列化为Object
+            doc.setSource(new RawValue(hit.getSource()));
             return doc;
         }).collect(Collectors.toList());
     }
 
+    /**
+     * 在后台构建新的物理索引，构建期间读请求仍通过别名访问旧索引，写请求同时写入新旧索引
+     * 迁移完成后在finishMigration中切换别名并删除旧索引
+     */
     public Job recreateIndex(String indexName) {
-        var indexModel = mustGetIndexModel(indexName);
-        if (indexModel.getStatus().equals(IndexStatus.Migrating.name())) {
+        var index = mustGetIndex(indexName);
+        assert index.getStatus() != null;
+        if (index.getStatus().equals(IndexStatus.Migrating)) {
             throw new RuntimeException("Index is migrating, can not recreate");
         }
-        var oldEsIndexName = indexModel.getEsIndexName();
         var newEsIndexName = indexName + "@" + System.currentTimeMillis();
         elasticOperator.createIndex(newEsIndexName);
-        indexModel.setEsIndexName(newEsIndexName);
-        // 有可能为null因为可能被主动删了
-        if (oldEsIndexName != null) {
-            elasticOperator.deleteIndex(oldEsIndexName);
-        }
-        var index = indexDao.fetchOne(INDEX.NAME, indexModel.getName());
-        assert index != null;
+        index.setBuildingEsIndexName(newEsIndexName);
+        index.setStatus(IndexStatus.Migrating);
+        indexDao.update(index);
+        indexMetadataCache.invalidate(indexName);
         // 重新导入数据(异步方式)
-        var job = jobService.createReinsertIndexDocJob(index.getId());
-        index.setEsIndexName(newEsIndexName);
+        return createReinsertJob(index.getId(), index.getCollectionId(), newEsIndexName);
+    }
+
+    /**
+     * 与recreateIndex一样在后台构建新的物理索引，但数据由ES的_reindex任务从旧索引复制，并把放宽的字段转换为字符串
+     */
+    public Job reindexIndex(String indexName, List<String> stringifyFields) {
+        var index = mustGetIndex(indexName);
+        assert index.getStatus() != null;
+        if (index.getStatus().equals(IndexStatus.Migrating)) {
+            throw new RuntimeException("Index is migrating, can not reindex");
+        }
+        var newEsIndexName = indexName + "@" + System.currentTimeMillis();
+        elasticOperator.createIndex(newEsIndexName);
+        index.setBuildingEsIndexName(newEsIndexName);
         index.setStatus(IndexStatus.Migrating);
         indexDao.update(index);
-        return job;
+        indexMetadataCache.invalidate(indexName);
+        return jobService.createReindexIndexDocJob(index.getId(), stringifyFields, enterBulkLoadMode(newEsIndexName));
     }
 
+    /**
+     * 执行_reindex任务并轮询进度，直到任务结束，失败时抛出异常
+     */
+    @SneakyThrows
+    public void reindexProcess(String indexName, List<String> stringifyFields, Consumer<String> progressConsumer) {
+        var index = indexDao.fetchOne(INDEX.NAME, indexName);
+        if (index == null || index.getBuildingEsIndexName() == null) {
+            throw new RuntimeException("Index is not rebuilding, can not reindex");
+        }
+        var taskId = elasticOperator.reindex(index.getEsIndexName(), index.getBuildingEsIndexName(), stringifyFields);
+        progressConsumer.accept("Reindex task " + taskId + " started");
+        while (true) {
+            Thread.sleep(migrationProperties.getReindexPollInterval().toMillis());
+            var task = elasticOperator.getTask(taskId);
+            var status = task.path("task").path("status");
+            progressConsumer.accept("Reindex " + (status.path("created").asLong() + status.path("updated").asLong())
+                    + "/" + status.path("total").asLong() + " docs");
+            if (!task.path("completed").asBoolean()) {
+                continue;
+            }
+            if (task.has("error")) {
+                throw new RuntimeException("Reindex failed: " + task.get("error").path("reason").asText());
+            }
+            var failures = task.path("response").path("failures");
+            if (!failures.isEmpty()) {
+                throw new RuntimeException("Reindex failed: " + failures.get(0).path("cause").path("reason").asText());
+            }
+            return;
+        }
+    }
+
+    /**
+     * 激活索引并导入全部数据，迁移失败(MigrateFailed)的索引也可以重新激活，
+     * 数据以外部版本号写入当前的物理索引，已经导入的文档不会被重复覆盖
+     * 迁移失败的索引也可以通过recreateIndex或reindexIndex在新的物理索引上重建
+     */
     @SneakyThrows
     public Job activeIndex(String indexName) {
-        var indexModel = mustGetIndexModel(indexName);
-        if (indexModel.getStatus().equals(IndexStatus.Inactivated.name())) {
-            indexDao.ctx().update(INDEX)
-                    .set(INDEX.STATUS, IndexStatus.Migrating)
-                    .where(INDEX.NAME.eq(indexName))
-                    .execute();
-        } else {
-            throw new RuntimeException("Index is not inactivated, can not active");
+        var indexModel = loadIndexModel(indexName);
+        var status = IndexStatus.valueOf(indexModel.getStatus());
+        if (status != IndexStatus.Inactivated && status != IndexStatus.MigrateFailed) {
+            throw new RuntimeException("Index is not inactivated or migrate failed, can not active");
+        }
+        // 只有状态未被其他请求修改时才开始迁移，避免同时创建两个导入任务
+        var updated = indexDao.ctx().update(INDEX)
+                .set(INDEX.STATUS, IndexStatus.Migrating)
+                .where(INDEX.NAME.eq(indexName))
+                .and(INDEX.STATUS.eq(status))
+                .execute();
+        indexMetadataCache.invalidate(indexName);
+        if (updated == 0) {
+            throw new RuntimeException("Index status changed, can not active");
         }
         // 固化es的mapping
         var mappingNode = objectMapper.createObjectNode();
@@ -423,7 +803,7 @@ public class IndexService {
         mappingNode.set("properties", objectMapper.createObjectNode());
         elasticOperator.createMapping(indexModel.getEsIndexName(), objectMapper.writeValueAsString(mappingNode));
         // 开始导入数据的任务
-        return jobService.createReinsertIndexDocJob(indexModel.getId());
+        return createReinsertJob(indexModel.getId(), indexModel.getCollectionId(), indexModel.getEsIndexName());
     }
 
     /**
@@ -441,58 +821,252 @@ public class IndexService {
         var job = jobService.createAppendIndexDocJob(index.getId());
         index.setStatus(IndexStatus.Migrating);
         indexDao.update(index);
+        indexMetadataCache.invalidate(indexName);
         return job;
     }
 
     /**
-     * 追加数据的具体实现
+     * 按DOC.ID的范围把重新导入拆分为多个子任务，每个子任务至少有一页的数据
+     * 写入的目标索引在任务开始前切换为批量导入模式
      */
-    public void appendDataProcess(String indexName, Long startDocId, Consumer<Exception> exceptionConsumer) {
-        var startDocIdAtomic = new AtomicReference<>(startDocId);
-        try {
-            final int pageSize = 10; // 每页的大小
-            boolean hasNextPage = true;
-            var indexModel = mustGetIndexModel(indexName);
-            while (hasNextPage) {
-                // 构建分页查询并执行
-                var docs = docDao.ctx().select().from(Tables.DOC)
-                        .where(Tables.DOC.ID.gt(startDocIdAtomic.get())
-                                .and(Tables.DOC.MODIFY_BY_INDEX.eq(indexModel.getId())
-                                        .or(Tables.DOC.MODIFY_BY_INDEX.isNull())))
-                        .limit(pageSize)
-                        .fetchInto(Doc.class);
-                if (docs.isEmpty()) {
-                    break;
+    private Job createReinsertJob(Long indexId, Long collectionId, String targetEsIndexName) {
+        var range = docDao.ctx().select(DSL.min(DOC.ID), DSL.max(DOC.ID))
+                .from(DOC)
+                .where(DOC.COLLECTION_ID.eq(collectionId))
+                .fetchOne();
+        var shardBoundaries = new ArrayList<Long>();
+        if (range == null || range.value2() == null) {
+            // 没有数据也创建一个子任务，由它完成父任务
+            shardBoundaries.add(0L);
+            shardBoundaries.add(0L);
+        } else {
+            var fromDocId = range.value1() - 1;
+            var toDocId = range.value2();
+            var shardCount = (int) Math.max(1, Math.min(migrationProperties.getShardCount(),
+                    (toDocId - fromDocId) / migrationProperties.getPageSize()));
+            var step = (toDocId - fromDocId) / shardCount;
+            shardBoundaries.add(fromDocId);
+            for (int i = 1; i < shardCount; i++) {
+                shardBoundaries.add(fromDocId + step * i);
+            }
+            shardBoundaries.add(toDocId);
+        }
+        return jobService.createReinsertIndexDocJob(indexId, shardBoundaries, enterBulkLoadMode(targetEsIndexName));
+    }
+
+    /**
+     * 关闭刷新、副本并使用异步translog，返回原来的配置，不开启批量导入模式时返回null
+     */
+    private Map<String, String> enterBulkLoadMode(String esIndexName) {
+        if (!migrationProperties.isBulkLoad()) {
+            return null;
+        }
+        var originalIndexSettings = elasticOperator.getIndexSettings(esIndexName, List.copyOf(BULK_LOAD_INDEX_SETTINGS.keySet()));
+        elasticOperator.putIndexSettings(esIndexName, BULK_LOAD_INDEX_SETTINGS);
+        return originalIndexSettings;
+    }
+
+    /**
+     * 恢复原来的配置，成功时刷新一次让导入的文档可以被搜索到，按配置合并段
+     */
+    private void exitBulkLoadMode(String esIndexName, Map<String, String> originalIndexSettings, boolean succeed) {
+        elasticOperator.putIndexSettings(esIndexName, originalIndexSettings);
+        if (succeed) {
+            elasticOperator.refreshIndex(esIndexName);
+            if (migrationProperties.isBulkLoadForceMerge()) {
+                elasticOperator.forceMergeIndex(esIndexName, 1);
+            }
+        }
+    }
+
+    /**
+     * 在数据库中只保留source里index映射了的字段，宽表只有少量字段被映射时大幅减少读取的数据量
+     * 不存在的字段不会出现在结果中，与验证时字段缺失的语义一致
+     */
+    private Field<JSONB> projectSource(IndexModel indexModel) {
+        if (!migrationProperties.isProjectSource()) {
+            return DOC.SOURCE;
+        }
+        var keys = indexModel.getMapping().getProperties().stream().map(PropertyModel::getName).toArray(String[]::new);
+        return DSL.field("(select coalesce(jsonb_object_agg(key, value), '{}'::jsonb) from jsonb_each({0}) where key = any({1}))",
+                SQLDataType.JSONB, DOC.SOURCE, DSL.val(keys));
+    }
+
+    /**
+     * 按DOC.ID顺序读取一页属于这个index的doc，toDocId为null时不限制上界
+     */
+    private List<Doc> fetchDocPage(IndexModel indexModel, Field<JSONB> source, Long afterDocId, Long toDocId, int pageSize) {
+        var condition = DOC.COLLECTION_ID.eq(indexModel.getCollectionId())
+                .and(DOC.ID.gt(afterDocId))
+                .and(DOC.MODIFY_BY_INDEX.eq(indexModel.getId())
+                        .or(DOC.MODIFY_BY_INDEX.isNull()));
+        if (toDocId != null) {
+            condition = condition.and(DOC.ID.le(toDocId));
+        }
+        return docDao.ctx().select(DOC.ID, source.as(DOC.SOURCE.getName())).from(DOC)
+                .where(condition)
+                .orderBy(DOC.ID)
+                .limit(pageSize)
+                .fetchInto(Doc.class);
+    }
+
+    /**
+     * 把DOC.ID在(fromDocId, toDocId]范围内的doc导入ES，返回最后一个处理的docId
+     * 不修改索引的状态，多个范围可以在不同的节点上并行执行
+     * 每写入checkpointBatches个批次后把已经确认写入ES的最后一个docId交给checkpointConsumer，结束时再交一次
+     * 每隔progressInterval把各阶段的计数交给progressConsumer，结束时再交一次
+     * 每个批次写入前检查cancelled，返回true时停止写入并抛出MigrationCancelledException
+     * 以_source_id作为外部版本号写入，并行的范围之间同一个_id也总是保留最新的doc
+     */
+    public Long migrateDocRange(String indexName, Long fromDocId, Long toDocId,
+                                Consumer<Long> checkpointConsumer, Consumer<JobProgress> progressConsumer,
+                                Consumer<Exception> exceptionConsumer, BooleanSupplier cancelled) {
+        var lastDocId = new AtomicReference<>(fromDocId);
+        var batchCount = new AtomicInteger();
+        var indexModel = loadIndexModel(indexName);
+        if (indexModel.getBuildingEsIndexName() != null) {
+            // 重建时写入正在构建的索引，indexModel是刚加载的不会影响缓存
+            indexModel.setEsIndexName(indexModel.getBuildingEsIndexName());
+        }
+        var source = projectSource(indexModel);
+        var bulkIndexer = elasticOperator.newBulkIndexer(migrationProperties.getBulkMaxBytes(), migrationProperties.getBulkMaxDocs(), true);
+        var progress = new MigrationProgress(fromDocId, toDocId);
+        var progressIntervalNanos = migrationProperties.getProgressInterval().toNanos();
+        var lastProgressNanos = new AtomicLong(System.nanoTime());
+        MigrationPipeline.builder()
+                .pageSize(migrationProperties.getPageSize())
+                .transformThreads(migrationProperties.getTransformThreads())
+                .queueCapacity(migrationProperties.getQueueCapacity())
+                .reader(afterDocId -> {
+                    var start = System.nanoTime();
+                    var docs = fetchDocPage(indexModel, source, afterDocId, toDocId, migrationProperties.getPageSize());
+                    var fetchNanos = System.nanoTime() - start;
+                    pipelineMetrics.recordDocPageFetch(indexModel.getName(), fetchNanos);
+                    progress.read(docs.size(), fetchNanos);
+                    return docs;
+                })
+                .transformer(docs -> {
+                    var start = System.nanoTime();
+                    var verified = processInsertDocument(indexModel, docs.stream().map(it -> ElasticDocument.builder().index(indexModel.getEsIndexName())
+                            .sourceId(it.getId())
+                            .documentJson(it.getSource().data()).build()).toList(), true, exceptionConsumer);
+                    progress.transformed(verified.size(), docs.size() - verified.size(), System.nanoTime() - start);
+                    return verified;
+                })
+                .writer(batch -> {
+                    if (cancelled.getAsBoolean()) {
+                        throw new MigrationCancelledException("Migration cancelled after doc " + lastDocId.get());
+                    }
+                    var start = System.nanoTime();
+                    var failures = bulkIndexer.index(batch.getDocuments());
+                    failures.forEach(failure -> exceptionConsumer.accept(
+                            new DocProcessException(failure.getSourceId(), "Index failed: " + failure.getReason())));
+                    var now = System.nanoTime();
+                    progress.indexed(batch.getDocuments().size() - failures.size(), failures.size(),
+                            bulkIndexer.getBytesSent(), batch.getLastDocId(), now - start);
+                    lastDocId.set(batch.getLastDocId());
+                    if (batchCount.incrementAndGet() % migrationProperties.getCheckpointBatches() == 0) {
+                        checkpointConsumer.accept(batch.getLastDocId());
+                    }
+                    if (now - lastProgressNanos.get() >= progressIntervalNanos) {
+                        lastProgressNanos.set(now);
+                        progressConsumer.accept(progress.snapshot());
+                    }
+                })
+                .build()
+                .run(fromDocId);
+        checkpointConsumer.accept(lastDocId.get());
+        progressConsumer.accept(progress.snapshot());
+        return lastDocId.get();
+    }
+
+    /**
+     * 记录迁移任务的进度，recordIndexDoc为true时在同一个事务中把进度写入IndexDocRecord表
+     */
+    public void saveMigrationCheckpoint(Long jobId, Long indexId, Long docId, boolean recordIndexDoc) {
+        indexDao.ctx().transaction(configuration -> {
+            var ctx = DSL.using(configuration);
+            ctx.update(JOB)
+                    .set(JOB.CHECKPOINT_DOC_ID, docId)
+                    .where(JOB.ID.eq(jobId))
+                    .execute();
+            if (recordIndexDoc) {
+                saveIndexDocRecord(ctx, indexId, docId);
+            }
+        });
+    }
+
+    /**
+     * 迁移结束后修改索引状态，成功时恢复为Activated并记录latestDocId供后续追加使用
+     * 失败时标记为MigrateFailed，追加任务的IndexDocRecord保留最后一次checkpoint的进度，再次追加时从这里继续
+     * MigrateFailed的索引仍可写入，可以通过activeIndex重新导入、appendData继续追加或recreateIndex/reindexIndex重建
+     * 重建的索引成功时先原子地切换别名再删除旧索引，失败时删除构建了一半的新索引，旧索引继续提供读取
+     * originalIndexSettings不为null时先恢复目标索引批量导入前的配置，失败时也会恢复
+     * 恢复配置或切换别名失败时按迁移失败处理，保证索引状态总会离开Migrating
+     */
+    public void finishMigration(String indexName, boolean migrated, Long latestDocId, Map<String, String> originalIndexSettings) {
+        var index = indexDao.fetchOne(INDEX.NAME, indexName);
+        assert index != null;
+        var oldEsIndexName = index.getEsIndexName();
+        var buildingEsIndexName = index.getBuildingEsIndexName();
+        var succeed = restoreEsIndex(indexName, oldEsIndexName, buildingEsIndexName, migrated, originalIndexSettings);
+        indexDao.ctx().transaction(configuration -> {
+            var ctx = DSL.using(configuration);
+            var update = ctx.update(INDEX)
+                    .set(INDEX.STATUS, succeed ? IndexStatus.Activated : IndexStatus.MigrateFailed);
+            if (buildingEsIndexName != null) {
+                update = update.set(INDEX.BUILDING_ES_INDEX_NAME, (String) null);
+                if (succeed) {
+                    update = update.set(INDEX.ES_INDEX_NAME, buildingEsIndexName);
                 }
-                docs.stream().map(Doc::getId).filter(Objects::nonNull).max(Long::compareTo).ifPresent(startDocIdAtomic::set);
-                var batchDoc = processInsertDocument(indexModel, docs.stream().map(it -> ElasticDocument.builder().index(indexModel.getEsIndexName())
-                        .sourceId(it.getId())
-                        .documentJson(it.getSource()).build()).toList(), true, exceptionConsumer);
-                elasticOperator.batchInsertDocument(batchDoc);
-                // 检查是否有下一页
-                hasNextPage = docs.size() == pageSize;
             }
-        } catch (Exception e) {
-            log.error("appendDataProcess error", e);
-        } finally {
-            // 恢复索引状态
-            var index = indexDao.fetchOne(INDEX.NAME, indexName);
-            assert index != null;
-            index.setStatus(IndexStatus.Activated);
-            indexDao.update(index);
-            // 记录最后的docId到IndexDocRecord表
-            var indexDocRecord = indexDocRecordDao.fetchOptional(INDEX_DOC_RECORD.INDEX_ID, index.getId());
-            if (indexDocRecord.isPresent()) {
-                var nowIndexDocRecord = indexDocRecord.get();
-                nowIndexDocRecord.setLatestDocId(startDocIdAtomic.get());
-                indexDocRecordDao.update(nowIndexDocRecord);
-            } else {
-                var newIndexDocRecord = new IndexDocRecord();
-                assert index.getId() != null;
-                newIndexDocRecord.setIndexId(index.getId());
-                newIndexDocRecord.setLatestDocId(startDocIdAtomic.get());
-                indexDocRecordDao.insert(newIndexDocRecord);
+            update.where(INDEX.ID.eq(index.getId())).execute();
+            if (succeed && latestDocId != null) {
+                saveIndexDocRecord(ctx, index.getId(), latestDocId);
+            }
+        });
+        indexMetadataCache.invalidate(indexName);
+        if (buildingEsIndexName != null) {
+            var unusedEsIndexName = succeed ? oldEsIndexName : buildingEsIndexName;
+            // 有可能为null因为可能被主动删了
+            if (unusedEsIndexName != null) {
+                try {
+                    elasticOperator.deleteIndex(unusedEsIndexName);
+                } catch (Exception e) {
+                    log.warn("Failed to delete es index {}", unusedEsIndexName, e);
+                }
             }
         }
     }
+
+    /**
+     * 恢复批量导入前的配置，迁移成功时再把别名切换到新索引，返回迁移最终是否成功
+     */
+    private boolean restoreEsIndex(String indexName, String oldEsIndexName, String buildingEsIndexName,
+                                   boolean migrated, Map<String, String> originalIndexSettings) {
+        try {
+            if (originalIndexSettings != null) {
+                exitBulkLoadMode(buildingEsIndexName != null ? buildingEsIndexName : oldEsIndexName, originalIndexSettings, migrated);
+            }
+            if (migrated && buildingEsIndexName != null) {
+                elasticOperator.swapAlias(indexName, oldEsIndexName, buildingEsIndexName);
+            }
+            return migrated;
+        } catch (Exception e) {
+            log.error("Failed to restore es index of {}", indexName, e);
+            return false;
+        }
+    }
+
+    private void saveIndexDocRecord(DSLContext ctx, Long indexId, Long latestDocId) {
+        var updated = ctx.update(INDEX_DOC_RECORD)
+                .set(INDEX_DOC_RECORD.LATEST_DOC_ID, latestDocId)
+                .where(INDEX_DOC_RECORD.INDEX_ID.eq(indexId))
+                .execute();
+        if (updated == 0) {
+            ctx.insertInto(INDEX_DOC_RECORD, INDEX_DOC_RECORD.INDEX_ID, INDEX_DOC_RECORD.LATEST_DOC_ID)
+                    .values(indexId, latestDocId)
+                    .execute();
+        }
+    }
 }
@@ -8,30 +8,71 @@ import com.thoughtworks.projectDemo.convert.DataMapper;
 import com.thoughtworks.projectDemo.enums.JobStatus;
 import com.thoughtworks.projectDemo.enums.JobType;
 import com.thoughtworks.projectDemo.enums.LogType;
+import com.thoughtworks.projectDemo.joblog.JobLogSink;
+import com.thoughtworks.projectDemo.migration.JobProgress;
+import com.thoughtworks.projectDemo.model.JobModel;
 import com.thoughtworks.projectDemo.tables.daos.JobDao;
-import com.thoughtworks.projectDemo.tables.daos.JobLogDao;
 import com.thoughtworks.projectDemo.tables.pojos.Job;
-import com.thoughtworks.projectDemo.tables.pojos.JobLog;
 import lombok.AllArgsConstructor;
 import lombok.SneakyThrows;
+import org.jooq.DSLContext;
 import org.jooq.JSONB;
+import org.jooq.impl.DSL;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+import static com.thoughtworks.projectDemo.Tables.JOB;
 
 @Service
 @AllArgsConstructor
 public class JobService {
     private final JobDao jobDao;
-    private final JobLogDao jobLogDao;
+    private final JobLogSink jobLogSink;
     private final ObjectMapper objectMapper;
     private final AmqpService amqpService;
     private final DataMapper dataMapper;
 
-    public Job createReinsertIndexDocJob(Long indexId) {
+    /**
+     * 创建重新导入的任务，按shardBoundaries把DOC.ID拆分为多个范围，每个范围作为一个子任务单独投递
+     * 父任务不投递，所有子任务成功后由最后完成的子任务把父任务标记为成功
+     */
+    public Job createReinsertIndexDocJob(Long indexId, List<Long> shardBoundaries, Map<String, String> originalIndexSettings) {
+        var parentJob = createJob(JobType.IndexMigrate, IndexMigrateJobData.builder()
+                .indexId(indexId)
+                .type(IndexMigrateJobType.REINSERT)
+                .originalIndexSettings(originalIndexSettings)
+                .fromDocId(shardBoundaries.get(0))
+                .toDocId(shardBoundaries.get(shardBoundaries.size() - 1)).build());
+        var shardJobs = new ArrayList<Job>();
+        for (int i = 0; i + 1 < shardBoundaries.size(); i++) {
+            var jsonData = IndexMigrateJobData.builder()
+                    .indexId(indexId)
+                    .type(IndexMigrateJobType.REINSERT)
+                    .parentJobId(parentJob.getId())
+                    .fromDocId(shardBoundaries.get(i))
+                    .toDocId(shardBoundaries.get(i + 1)).build();
+            shardJobs.add(createJob(JobType.IndexMigrate, jsonData, parentJob.getId()));
+        }
+        updateJobStatus(parentJob.getId(), JobStatus.Running);
+        shardJobs.forEach(this::publishIndexMigrateJob);
+        return parentJob;
+    }
+
+    public Job createReindexIndexDocJob(Long indexId, List<String> stringifyFields, Map<String, String> originalIndexSettings) {
         var jsonData = IndexMigrateJobData.builder()
                 .indexId(indexId)
-                .type(IndexMigrateJobType.REINSERT).build();
+                .type(IndexMigrateJobType.REINDEX)
+                .originalIndexSettings(originalIndexSettings)
+                .stringifyFields(stringifyFields).build();
         var job = createJob(JobType.IndexMigrate, jsonData);
-        amqpService.indexMigrateJob(dataMapper.toAmqpJob(job));
+        publishIndexMigrateJob(job);
         return job;
     }
 
@@ -40,15 +81,37 @@ public class JobService {
                 .indexId(indexId)
                 .type(IndexMigrateJobType.APPEND).build();
         var job = createJob(JobType.IndexMigrate, jsonData);
-        amqpService.indexMigrateJob(dataMapper.toAmqpJob(job));
+        publishIndexMigrateJob(job);
         return job;
     }
 
-    @SneakyThrows
+    /**
+     * 在事务中创建的任务等事务提交后再投递，避免消费者读不到任务或者读到未提交的索引状态
+     */
+    private void publishIndexMigrateJob(Job job) {
+        var amqpJob = dataMapper.toAmqpJob(job);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    amqpService.indexMigrateJob(amqpJob);
+                }
+            });
+        } else {
+            amqpService.indexMigrateJob(amqpJob);
+        }
+    }
+
     public Job createJob(JobType jobType, Object jobData) {
+        return createJob(jobType, jobData, null);
+    }
+
+    @SneakyThrows
+    public Job createJob(JobType jobType, Object jobData, Long parentId) {
         Job job = new Job();
         job.setStatus(JobStatus.Created);
         job.setJobType(jobType);
+        job.setParentId(parentId);
         var json = objectMapper.writeValueAsString(jobData);
         job.setJobData(JSONB.valueOf(json));
         jobDao.insert(job);
@@ -56,13 +119,118 @@ public class JobService {
     }
 
     public void updateJobStatus(Long jobId, JobStatus jobStatus) {
+        if (jobStatus == JobStatus.Succeed || jobStatus == JobStatus.Failed) {
+            // 任务结束前写入缓冲中的日志
+            jobLogSink.flush();
+        }
         jobDao.fetchOptionalById(jobId).ifPresent(job -> {
             job.setStatus(jobStatus);
             jobDao.update(job);
         });
     }
 
+    public Job getJob(Long jobId) {
+        return jobDao.fetchOneById(jobId);
+    }
+
+    /**
+     * 父任务没有自己的进度，返回所有已经开始的子任务合并后的进度
+     */
+    public JobModel getJobModel(Long jobId) {
+        var job = jobDao.fetchOptionalById(jobId).orElseThrow(() -> new RuntimeException("Job not found"));
+        var jobModel = dataMapper.toJobModel(job);
+        var progress = Optional.ofNullable(readJobProgress(job));
+        if (progress.isEmpty()) {
+            progress = jobDao.fetchByParentId(jobId).stream()
+                    .map(this::readJobProgress)
+                    .filter(Objects::nonNull)
+                    .reduce(JobProgress::merge);
+        }
+        progress.ifPresent(it -> jobModel.setProgress(dataMapper.toJobProgressModel(it)));
+        return jobModel;
+    }
+
+    @SneakyThrows
+    public void updateJobProgress(Long jobId, JobProgress progress) {
+        jobDao.ctx().update(JOB)
+                .set(JOB.PROGRESS, JSONB.valueOf(objectMapper.writeValueAsString(progress)))
+                .where(JOB.ID.eq(jobId))
+                .execute();
+    }
+
+    @SneakyThrows
+    private JobProgress readJobProgress(Job job) {
+        if (job.getProgress() == null) {
+            return null;
+        }
+        return objectMapper.readValue(job.getProgress().data(), JobProgress.class);
+    }
+
+    @SneakyThrows
+    public <T> T getJobData(Long jobId, Class<T> jobDataClass) {
+        var job = jobDao.fetchOneById(jobId);
+        if (job == null) {
+            throw new RuntimeException("Job not found");
+        }
+        return objectMapper.readValue(job.getJobData().data(), jobDataClass);
+    }
+
+    /**
+     * 结束一个子任务，子任务失败时同时把父任务标记为失败，返回本次调用是否结束了最后一个子任务
+     * 在父任务的行锁内更新和检查，多个节点同时结束最后几个子任务时只有最后提交的一个返回true，
+     * 由它负责恢复索引状态；所有子任务都成功时父任务标记为成功
+     */
+    public boolean finishChildJob(Long jobId, Long parentJobId, JobStatus jobStatus) {
+        // 任务结束前写入缓冲中的日志
+        jobLogSink.flush();
+        return jobDao.ctx().transactionResult(configuration -> {
+            var ctx = DSL.using(configuration);
+            ctx.selectFrom(JOB).where(JOB.ID.eq(parentJobId)).forUpdate().execute();
+            ctx.update(JOB)
+                    .set(JOB.STATUS, jobStatus)
+                    .where(JOB.ID.eq(jobId))
+                    .execute();
+            if (ctx.fetchExists(JOB, JOB.PARENT_ID.eq(parentJobId)
+                    .and(JOB.STATUS.notIn(JobStatus.Succeed, JobStatus.Failed)))) {
+                if (jobStatus == JobStatus.Failed) {
+                    // 通知其他还在运行的子任务停止写入
+                    failParentJob(ctx, parentJobId);
+                }
+                return false;
+            }
+            if (ctx.fetchExists(JOB, JOB.PARENT_ID.eq(parentJobId).and(JOB.STATUS.eq(JobStatus.Failed)))) {
+                failParentJob(ctx, parentJobId);
+            } else {
+                ctx.update(JOB)
+                        .set(JOB.STATUS, JobStatus.Succeed)
+                        .where(JOB.ID.eq(parentJobId))
+                        .and(JOB.STATUS.eq(JobStatus.Running))
+                        .execute();
+            }
+            return true;
+        });
+    }
+
+    private void failParentJob(DSLContext ctx, Long parentJobId) {
+        ctx.update(JOB)
+                .set(JOB.STATUS, JobStatus.Failed)
+                .where(JOB.ID.eq(parentJobId))
+                .and(JOB.STATUS.eq(JobStatus.Running))
+                .execute();
+    }
+
+    public boolean isJobFailed(Long jobId) {
+        return jobDao.ctx().fetchExists(JOB, JOB.ID.eq(jobId).and(JOB.STATUS.eq(JobStatus.Failed)));
+    }
+
     public void addJobLog(Long jobId, LogType logType, String log) {
-        jobLogDao.insert(new JobLog().setLogType(logType).setJobId(jobId).setLog(log));
+        jobLogSink.add(jobId, logType, log);
+    }
+
+    /**
+     * 记录单个文档的错误，相同原因的错误会合并为一条日志
+     */
+    public void addJobError(Long jobId, Exception e) {
+        jobLogSink.addError(jobId, e);
     }
 }
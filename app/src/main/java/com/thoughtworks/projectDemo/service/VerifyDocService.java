@@ -2,65 +2,52 @@ package com.thoughtworks.projectDemo.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.thoughtworks.projectDemo.model.IndexModel;
-import lombok.AllArgsConstructor;
+import com.thoughtworks.projectDemo.verify.CompiledIndexSchema;
+import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import org.springframework.stereotype.Service;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 @Service
-@AllArgsConstructor
+@RequiredArgsConstructor
 public class VerifyDocService {
     private final ObjectMapper objectMapper;
+    // indexId -> 编译好的schema，mapping改变后重新编译
+    private final Map<Long, CompiledIndexSchema> schemaCache = new ConcurrentHashMap<>();
 
     @SneakyThrows
     public String verifyDoc(IndexModel indexModel, String doc) {
-        JsonNode jsonNode = objectMapper.readTree(doc);
-        var newJsonNode = objectMapper.createObjectNode();
-        if (indexModel.getMapping().getProperties().isEmpty()) {
-            throw new RuntimeException("No mapping found, please create mapping first");
+        return objectMapper.writeValueAsString(verifyDoc(indexModel, objectMapper.readTree(doc)));
+    }
+
+    /**
+     * 基于已经解析好的文档进行验证，返回转换后的文档
+     */
+    public ObjectNode verifyDoc(IndexModel indexModel, JsonNode jsonNode) {
+        return compile(indexModel).verify(jsonNode, objectMapper.createObjectNode());
+    }
+
+    /**
+     * 获取index当前mapping对应的schema，mapping没有变化时复用缓存
+     */
+    public CompiledIndexSchema compile(IndexModel indexModel) {
+        var properties = indexModel.getMapping().getProperties();
+        if (indexModel.getId() == null) {
+            return CompiledIndexSchema.compile(properties);
+        }
+        var schema = schemaCache.get(indexModel.getId());
+        if (schema == null || !schema.getProperties().equals(properties)) {
+            schema = CompiledIndexSchema.compile(properties);
+            schemaCache.put(indexModel.getId(), schema);
         }
-        indexModel.getMapping().getProperties().forEach(it -> {
-            var node = jsonNode.get(it.getName());
-            // docIdPart 默认就是必须存在
-            if (it.getRequired() || it.getDocIdPart()) {
-                if (node == null) {
-                    throw new RuntimeException("Field " + it.getName() + " is required");
-                }
-            }
-            if (node != null) {
-                switch (it.getType()) {
-                    case BOOL:
-                        if (node.isBoolean()) {
-                            newJsonNode.put(it.getName(), node.asBoolean());
-                        } else {
-                            var text = node.asText();
-                            if (text.equalsIgnoreCase("true") || text.equalsIgnoreCase("false")) {
-                                newJsonNode.put(it.getName(), Boolean.parseBoolean(text));
-                            } else {
-                                throw new RuntimeException("Field " + it.getName() + " type is not boolean");
-                            }
-                        }
-                        break;
-                    case DATE:
-                        // todo: check date format
-                        newJsonNode.put(it.getName(), node.asText());
-                        break;
-                    case NUMBER:
-                        try {
-                            var value = Long.parseLong(node.asText());
-                            newJsonNode.put(it.getName(), value);
-                        } catch (NumberFormatException e) {
-                            throw new RuntimeException("Field " + it.getName() + " type is not number");
-                        }
-                        break;
-                    case TEXT:
-                        newJsonNode.put(it.getName(), node.asText());
-                        break;
-                    default:
-                        throw new RuntimeException("Field " + it.getName() + " type is not supported");
-                }
-            }
-        });
-        return objectMapper.writeValueAsString(newJsonNode);
+        return schema;
+    }
+
+    public void evict(Long indexId) {
+        schemaCache.remove(indexId);
     }
 }
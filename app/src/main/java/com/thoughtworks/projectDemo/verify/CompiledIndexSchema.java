@@ -0,0 +1,311 @@
+package com.thoughtworks.projectDemo.verify;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.thoughtworks.projectDemo.model.PropertyModel;
+import com.thoughtworks.projectDemo.model.RestrictModel;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * 由index的mapping编译出来的验证器
+ * 字段名、类型转换和约束条件都预先解析到数组中，mapping不变时可以重复使用，验证时不需要再解析mapping
+ * 日期字段不验证格式，只检查枚举值，原样交给ES解析
+ */
+public class CompiledIndexSchema {
+    // 编译时使用的mapping，用于判断缓存是否过期
+    @Getter
+    private final List<PropertyModel> properties;
+    private final FieldHandler[] fields;
+    // 按名称排序的docIdPart字段
+    private final String[] docIdParts;
+    // 字段名 -> fields中的位置，流式验证时使用
+    private final Map<String, Integer> fieldPositions = new HashMap<>();
+
+    private CompiledIndexSchema(List<PropertyModel> properties, FieldHandler[] fields, String[] docIdParts) {
+        this.properties = properties;
+        this.fields = fields;
+        this.docIdParts = docIdParts;
+        for (int i = 0; i < fields.length; i++) {
+            fieldPositions.put(fields[i].name, i);
+        }
+    }
+
+    public static CompiledIndexSchema compile(List<PropertyModel> properties) {
+        var docIdParts = properties.stream()
+                .filter(it -> Boolean.TRUE.equals(it.getDocIdPart()))
+                .map(PropertyModel::getName)
+                .sorted()
+                .toArray(String[]::new);
+        var docIdPartList = List.of(docIdParts);
+        var fields = properties.stream()
+                .map(it -> new FieldHandler(it, docIdPartList.indexOf(it.getName())))
+                .toArray(FieldHandler[]::new);
+        return new CompiledIndexSchema(List.copyOf(properties), fields, docIdParts);
+    }
+
+    public boolean hasDocIdPart() {
+        return docIdParts.length > 0;
+    }
+
+    /**
+     * 验证source并把转换后的字段写入target
+     */
+    public ObjectNode verify(JsonNode source, ObjectNode target) {
+        if (fields.length == 0) {
+            throw new RuntimeException("No mapping found, please create mapping first");
+        }
+        for (FieldHandler field : fields) {
+            field.apply(source, target);
+        }
+        return target;
+    }
+
+    /**
+     * 流式验证，从parser读取文档，把转换后的字段直接写入generator，返回文档id
+     * 不在mapping中的字段直接跳过，字段按source中的顺序输出
+     * mapping中的字段重复出现时返回null，JsonNode验证以最后一次出现的为准，由调用方回退到JsonNode验证
+     */
+    public String verify(JsonParser parser, JsonGenerator generator) throws IOException {
+        if (fields.length == 0) {
+            throw new RuntimeException("No mapping found, please create mapping first");
+        }
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new RuntimeException("Document is not a json object");
+        }
+        var seen = new boolean[fields.length];
+        var docIdValues = new String[docIdParts.length];
+        generator.writeStartObject();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var position = fieldPositions.get(parser.currentName());
+            var token = parser.nextToken();
+            if (position == null) {
+                parser.skipChildren();
+                continue;
+            }
+            if (seen[position]) {
+                return null;
+            }
+            seen[position] = true;
+            // 与textOf(JsonNode)保持一致
+            String text;
+            if (token.isStructStart()) {
+                parser.skipChildren();
+                text = "";
+            } else if (token == JsonToken.VALUE_NULL) {
+                text = "null";
+            } else if (token.isNumeric()) {
+                text = numberText(parser.getNumberValue());
+            } else {
+                text = parser.getText();
+            }
+            var field = fields[position];
+            if (field.docIdPosition >= 0) {
+                docIdValues[field.docIdPosition] = text;
+            }
+            field.coercer.write(field, token, text, generator);
+        }
+        generator.writeEndObject();
+        for (int i = 0; i < fields.length; i++) {
+            if (!seen[i] && fields[i].required) {
+                throw new RuntimeException("Field " + fields[i].name + " is required");
+            }
+        }
+        var builder = new StringBuilder();
+        for (int i = 0; i < docIdValues.length; i++) {
+            if (i > 0) {
+                builder.append('-');
+            }
+            if (docIdValues[i] != null) {
+                builder.append(docIdValues[i]);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 用source中的docIdPart字段拼接出文档id
+     */
+    public String buildDocId(JsonNode source) {
+        var builder = new StringBuilder();
+        for (int i = 0; i < docIdParts.length; i++) {
+            if (i > 0) {
+                builder.append('-');
+            }
+            var valueNode = source.get(docIdParts[i]);
+            if (valueNode != null) {
+                builder.append(textOf(valueNode));
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 字段的文本值，数字统一为numberText的格式，流式验证和JsonNode验证得到相同的字段值和文档id
+     */
+    private static String textOf(JsonNode node) {
+        return node.isNumber() ? numberText(node.numberValue()) : node.asText();
+    }
+
+    /**
+     * 整数按十进制输出，小数按double输出，不保留source中的原始写法，例如1.50和1.5、1e3和1000.0相同
+     */
+    private static String numberText(Number number) {
+        if (number instanceof Double || number instanceof Float || number instanceof BigDecimal) {
+            return Double.toString(number.doubleValue());
+        }
+        return number.toString();
+    }
+
+    private static final class FieldHandler {
+        private final String name;
+        // docIdPart 默认就是必须存在
+        private final boolean required;
+        private final Coercer coercer;
+        // 没有约束时为null
+        private final Set<String> enumerate;
+        private final Long minValue;
+        private final Long maxValue;
+        // 在docIdParts中的位置，不是docIdPart时为-1
+        private final int docIdPosition;
+
+        private FieldHandler(PropertyModel propertyModel, int docIdPosition) {
+            this.name = propertyModel.getName();
+            this.docIdPosition = docIdPosition;
+            this.required = Boolean.TRUE.equals(propertyModel.getRequired()) || Boolean.TRUE.equals(propertyModel.getDocIdPart());
+            this.coercer = switch (propertyModel.getType()) {
+                case BOOL -> Coercer.BOOL;
+                case DATE -> Coercer.DATE;
+                case NUMBER -> Coercer.NUMBER;
+                case TEXT -> Coercer.TEXT;
+                default -> throw new RuntimeException("Field " + propertyModel.getName() + " type is not supported");
+            };
+            RestrictModel restrict = propertyModel.getRestrict();
+            if (restrict != null && restrict.getEnumerateList() != null && !restrict.getEnumerateList().isEmpty()) {
+                this.enumerate = new HashSet<>(restrict.getEnumerateList());
+            } else {
+                this.enumerate = null;
+            }
+            this.minValue = restrict != null ? restrict.getMinValue() : null;
+            this.maxValue = restrict != null ? restrict.getMaxValue() : null;
+        }
+
+        private void apply(JsonNode source, ObjectNode target) {
+            var node = source.get(name);
+            if (node == null) {
+                if (required) {
+                    throw new RuntimeException("Field " + name + " is required");
+                }
+                return;
+            }
+            coercer.apply(this, node, target);
+        }
+
+        private String checkEnumerate(String text) {
+            if (enumerate != null && !enumerate.contains(text)) {
+                throw new RuntimeException("Field " + name + " value is not in enumerate list");
+            }
+            return text;
+        }
+
+        private long checkRange(long value) {
+            if (minValue != null && value < minValue) {
+                throw new RuntimeException("Field " + name + " value is less than min value");
+            }
+            if (maxValue != null && value > maxValue) {
+                throw new RuntimeException("Field " + name + " value is greater than max value");
+            }
+            return value;
+        }
+    }
+
+    private enum Coercer {
+        BOOL {
+            @Override
+            void apply(FieldHandler field, JsonNode node, ObjectNode target) {
+                if (node.isBoolean()) {
+                    target.put(field.name, node.booleanValue());
+                    return;
+                }
+                var text = textOf(node);
+                if (text.equalsIgnoreCase("true") || text.equalsIgnoreCase("false")) {
+                    target.put(field.name, Boolean.parseBoolean(text));
+                } else {
+                    throw new RuntimeException("Field " + field.name + " type is not boolean");
+                }
+            }
+
+            @Override
+            void write(FieldHandler field, JsonToken token, String text, JsonGenerator generator) throws IOException {
+                if (token == JsonToken.VALUE_TRUE || token == JsonToken.VALUE_FALSE) {
+                    generator.writeBooleanField(field.name, token == JsonToken.VALUE_TRUE);
+                } else if (text.equalsIgnoreCase("true") || text.equalsIgnoreCase("false")) {
+                    generator.writeBooleanField(field.name, Boolean.parseBoolean(text));
+                } else {
+                    throw new RuntimeException("Field " + field.name + " type is not boolean");
+                }
+            }
+        },
+        DATE {
+            @Override
+            void apply(FieldHandler field, JsonNode node, ObjectNode target) {
+                target.put(field.name, field.checkEnumerate(textOf(node)));
+            }
+
+            @Override
+            void write(FieldHandler field, JsonToken token, String text, JsonGenerator generator) throws IOException {
+                generator.writeStringField(field.name, field.checkEnumerate(text));
+            }
+        },
+        NUMBER {
+            @Override
+            void apply(FieldHandler field, JsonNode node, ObjectNode target) {
+                long value;
+                try {
+                    value = node.isIntegralNumber() && node.canConvertToLong() ? node.longValue() : Long.parseLong(textOf(node));
+                } catch (NumberFormatException e) {
+                    throw new RuntimeException("Field " + field.name + " type is not number");
+                }
+                if (field.enumerate != null) {
+                    field.checkEnumerate(Long.toString(value));
+                }
+                target.put(field.name, field.checkRange(value));
+            }
+
+            @Override
+            void write(FieldHandler field, JsonToken token, String text, JsonGenerator generator) throws IOException {
+                long value;
+                try {
+                    value = Long.parseLong(text);
+                } catch (NumberFormatException e) {
+                    throw new RuntimeException("Field " + field.name + " type is not number");
+                }
+                if (field.enumerate != null) {
+                    field.checkEnumerate(Long.toString(value));
+                }
+                generator.writeNumberField(field.name, field.checkRange(value));
+            }
+        },
+        TEXT {
+            @Override
+            void apply(FieldHandler field, JsonNode node, ObjectNode target) {
+                target.put(field.name, field.checkEnumerate(textOf(node)));
+            }
+
+            @Override
+            void write(FieldHandler field, JsonToken token, String text, JsonGenerator generator) throws IOException {
+                generator.writeStringField(field.name, field.checkEnumerate(text));
+            }
+        };
+
+        abstract void apply(FieldHandler field, JsonNode node, ObjectNode target);
+
+        abstract void write(FieldHandler field, JsonToken token, String text, JsonGenerator generator) throws IOException;
+    }
+}
@@ -0,0 +1,54 @@
+package com.thoughtworks.projectDemo.verify;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thoughtworks.projectDemo.elastic.ElasticDocument;
+import lombok.SneakyThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 基于JsonParser/JsonGenerator的流式验证，不构建中间的JsonNode
+ * 不在mapping中的字段直接跳过，接受的字段直接写入可复用的缓冲区，适合只映射了少量列的宽文档
+ * 文档中mapping的字段重复时回退到JsonNode验证，重复的字段与之一致以最后一次出现的为准
+ * 非线程安全，每个转换线程持有一个实例
+ */
+public class StreamingDocVerifier {
+    private final ObjectMapper objectMapper;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(4096);
+
+    public StreamingDocVerifier(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @SneakyThrows
+    public ElasticDocument verify(CompiledIndexSchema schema, String esIndexName, ElasticDocument source) {
+        buffer.reset();
+        String id;
+        try (var parser = objectMapper.getFactory().createParser(source.getDocumentJson());
+             var generator = objectMapper.getFactory().createGenerator(buffer)) {
+            id = schema.verify(parser, generator);
+        }
+        if (id == null) {
+            return verifyTree(schema, esIndexName, source);
+        }
+        return ElasticDocument.builder()
+                .index(esIndexName)
+                .id(id)
+                .sourceId(source.getSourceId())
+                .documentJson(buffer.toString(StandardCharsets.UTF_8))
+                .build();
+    }
+
+    @SneakyThrows
+    private ElasticDocument verifyTree(CompiledIndexSchema schema, String esIndexName, ElasticDocument source) {
+        var sourceNode = objectMapper.readTree(source.getDocumentJson());
+        var verifiedNode = schema.verify(sourceNode, objectMapper.createObjectNode());
+        return ElasticDocument.builder()
+                .index(esIndexName)
+                .id(schema.buildDocId(sourceNode))
+                .sourceId(source.getSourceId())
+                .documentJson(objectMapper.writeValueAsString(verifiedNode))
+                .build();
+    }
+}
@@ -0,0 +1,107 @@
+package com.thoughtworks.projectDemo.benchmark;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import com.thoughtworks.projectDemo.elastic.BulkItemFailure;
+import com.thoughtworks.projectDemo.elastic.ElasticDocument;
+import com.thoughtworks.projectDemo.elastic.ElasticOperator;
+import com.thoughtworks.projectDemo.migration.MigrationProperties;
+import com.thoughtworks.projectDemo.service.VerifyDocService;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 生成_bulk请求体的吞吐量
+ * batchInsertDocument发送到本机的一个HTTP服务，它丢弃请求体并返回没有失败的响应，只包含序列化和回环网络的开销
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BulkBodyBenchmark {
+    private static final int BATCH_SIZE = 1000;
+    private static final byte[] BULK_RESPONSE = "{\"took\":1,\"errors\":false,\"items\":[]}".getBytes(StandardCharsets.UTF_8);
+
+    @Param({"NARROW", "WIDE"})
+    public BenchmarkCorpus.DocShape docShape;
+
+    @Param({"5", "20", "50"})
+    public int mappingSize;
+
+    private List<ElasticDocument> elasticDocuments;
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private RestClient restClient;
+    private ElasticOperator elasticOperator;
+    private JsonGenerator generator;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        var objectMapper = new ObjectMapper();
+        var indexModel = BenchmarkCorpus.indexModel(mappingSize);
+        var indexService = BenchmarkCorpus.indexService(objectMapper, new VerifyDocService(objectMapper), new MigrationProperties());
+        var documents = BenchmarkCorpus.documents(objectMapper, BATCH_SIZE, mappingSize, docShape, 0);
+        // 和迁移时一样，写入ES的是验证转换后的文档
+        elasticDocuments = indexService.processInsertDocument(indexModel, documents.stream()
+                .map(it -> ElasticDocument.builder().index(indexModel.getEsIndexName()).sourceId(1L).documentJson(it).build())
+                .toList(), false, e -> {
+        });
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/_bulk", exchange -> {
+            try (exchange) {
+                exchange.getRequestBody().transferTo(OutputStream.nullOutputStream());
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, BULK_RESPONSE.length);
+                exchange.getResponseBody().write(BULK_RESPONSE);
+            }
+        });
+        serverExecutor = Executors.newFixedThreadPool(2);
+        server.setExecutor(serverExecutor);
+        server.start();
+        restClient = RestClient.builder(new HttpHost(server.getAddress().getAddress(), server.getAddress().getPort(), "http")).build();
+        elasticOperator = new ElasticOperator(null, restClient, objectMapper, BenchmarkCorpus.pipelineMetrics());
+        generator = objectMapper.getFactory().createGenerator(OutputStream.nullOutputStream());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        generator.close();
+        restClient.close();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    private ElasticDocument next() {
+        cursor = cursor + 1 == BATCH_SIZE ? 0 : cursor + 1;
+        return elasticDocuments.get(cursor);
+    }
+
+    @Benchmark
+    public String buildHasSourceIdDocumentJson() {
+        return next().buildHasSourceIdDocumentJson();
+    }
+
+    @Benchmark
+    public JsonGenerator writeHasSourceIdDocument() {
+        next().writeHasSourceIdDocument(generator);
+        return generator;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<BulkItemFailure> batchInsertDocument() {
+        return elasticOperator.batchInsertDocument(elasticDocuments);
+    }
+}
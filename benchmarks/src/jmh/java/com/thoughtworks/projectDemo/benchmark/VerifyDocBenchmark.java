@@ -0,0 +1,96 @@
+package com.thoughtworks.projectDemo.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thoughtworks.projectDemo.elastic.ElasticDocument;
+import com.thoughtworks.projectDemo.migration.MigrationProperties;
+import com.thoughtworks.projectDemo.model.IndexModel;
+import com.thoughtworks.projectDemo.service.IndexService;
+import com.thoughtworks.projectDemo.service.VerifyDocService;
+import com.thoughtworks.projectDemo.verify.CompiledIndexSchema;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 文档验证、生成id和批量验证转换的吞吐量
+ * 脏数据会抛出异常，异常的开销也计算在内
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class VerifyDocBenchmark {
+    private static final int BATCH_SIZE = 1000;
+
+    @Param({"NARROW", "WIDE"})
+    public BenchmarkCorpus.DocShape docShape;
+
+    @Param({"5", "20", "50"})
+    public int mappingSize;
+
+    @Param({"0", "0.1", "0.5"})
+    public double dirtyRatio;
+
+    @Param({"false", "true"})
+    public boolean streamingVerify;
+
+    private IndexModel indexModel;
+    private VerifyDocService verifyDocService;
+    private IndexService indexService;
+    private CompiledIndexSchema schema;
+    private List<String> documents;
+    private List<JsonNode> documentNodes;
+    private List<ElasticDocument> elasticDocuments;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        var objectMapper = new ObjectMapper();
+        var migrationProperties = new MigrationProperties();
+        migrationProperties.setStreamingVerify(streamingVerify);
+        indexModel = BenchmarkCorpus.indexModel(mappingSize);
+        verifyDocService = new VerifyDocService(objectMapper);
+        indexService = BenchmarkCorpus.indexService(objectMapper, verifyDocService, migrationProperties);
+        schema = verifyDocService.compile(indexModel);
+        documents = BenchmarkCorpus.documents(objectMapper, BATCH_SIZE, mappingSize, docShape, dirtyRatio);
+        documentNodes = new ArrayList<>(BATCH_SIZE);
+        elasticDocuments = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < documents.size(); i++) {
+            documentNodes.add(objectMapper.readTree(documents.get(i)));
+            elasticDocuments.add(ElasticDocument.builder()
+                    .index(indexModel.getEsIndexName())
+                    .sourceId((long) i)
+                    .documentJson(documents.get(i))
+                    .build());
+        }
+    }
+
+    private int next() {
+        cursor = cursor + 1 == BATCH_SIZE ? 0 : cursor + 1;
+        return cursor;
+    }
+
+    @Benchmark
+    public Object verifyDoc() {
+        try {
+            return verifyDocService.verifyDoc(indexModel, documents.get(next()));
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public String buildDocId() {
+        return schema.buildDocId(documentNodes.get(next()));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<ElasticDocument> processInsertDocument() {
+        return indexService.processInsertDocument(indexModel, elasticDocuments, true, e -> {
+        });
+    }
+}
@@ -0,0 +1,114 @@
+package com.thoughtworks.projectDemo.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.thoughtworks.projectDemo.metrics.PipelineMetrics;
+import com.thoughtworks.projectDemo.migration.MigrationProperties;
+import com.thoughtworks.projectDemo.model.IndexModel;
+import com.thoughtworks.projectDemo.model.MappingModel;
+import com.thoughtworks.projectDemo.model.PropertyModel;
+import com.thoughtworks.projectDemo.service.IndexService;
+import com.thoughtworks.projectDemo.service.VerifyDocService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 生成基准测试使用的mapping和文档，固定随机种子保证每次运行的数据相同
+ * 第0个字段是docIdPart，第1个字段是必填的数字，脏数据把它替换为非数字的文本
+ */
+public final class BenchmarkCorpus {
+    public static final String INDEX_NAME = "benchmark";
+    // 宽文档中没有映射的字段数
+    private static final int WIDE_EXTRA_FIELDS = 200;
+    private static final PropertyModel.TypeEnum[] FIELD_TYPES = {
+            PropertyModel.TypeEnum.TEXT, PropertyModel.TypeEnum.NUMBER, PropertyModel.TypeEnum.BOOL, PropertyModel.TypeEnum.DATE};
+
+    public enum DocShape {
+        // 只包含映射了的字段
+        NARROW,
+        // 映射的字段之外还有大量没有映射的字段
+        WIDE
+    }
+
+    private BenchmarkCorpus() {
+    }
+
+    public static IndexModel indexModel(int mappingSize) {
+        var properties = new ArrayList<PropertyModel>(mappingSize);
+        for (int i = 0; i < mappingSize; i++) {
+            properties.add(new PropertyModel()
+                    .name(fieldName(i))
+                    .type(FIELD_TYPES[i % FIELD_TYPES.length])
+                    .docIdPart(i == 0)
+                    .required(i <= 1)
+                    .enable(true));
+        }
+        return new IndexModel()
+                .id(1L)
+                .name(INDEX_NAME)
+                .esIndexName(INDEX_NAME)
+                .autoAppendFromCollection(false)
+                .mapping(new MappingModel().properties(properties));
+    }
+
+    public static List<String> documents(ObjectMapper objectMapper, int count, int mappingSize, DocShape docShape,
+                                         double dirtyRatio) throws IOException {
+        var documents = new ArrayList<String>(count);
+        for (ObjectNode node : documentNodes(objectMapper, 0, count, mappingSize, docShape, dirtyRatio)) {
+            documents.add(objectMapper.writeValueAsString(node));
+        }
+        return documents;
+    }
+
+    /**
+     * 生成id从startId开始的count个文档，相同的startId生成的文档相同
+     */
+    public static List<ObjectNode> documentNodes(ObjectMapper objectMapper, long startId, int count, int mappingSize,
+                                                 DocShape docShape, double dirtyRatio) {
+        var random = new Random(42 + startId);
+        var documents = new ArrayList<ObjectNode>(count);
+        for (long i = startId; i < startId + count; i++) {
+            ObjectNode node = objectMapper.createObjectNode();
+            for (int j = 0; j < mappingSize; j++) {
+                var name = fieldName(j);
+                switch (FIELD_TYPES[j % FIELD_TYPES.length]) {
+                    case TEXT -> node.put(name, j == 0 ? "doc-" + i : "text value " + random.nextInt(10000));
+                    case NUMBER -> node.put(name, random.nextInt(1_000_000));
+                    case BOOL -> node.put(name, random.nextBoolean());
+                    case DATE -> node.put(name, "2024-01-" + (10 + random.nextInt(18)));
+                }
+            }
+            if (docShape == DocShape.WIDE) {
+                for (int j = 0; j < WIDE_EXTRA_FIELDS; j++) {
+                    node.put("extra" + j, "unmapped value " + random.nextInt(10000));
+                }
+            }
+            if (random.nextDouble() < dirtyRatio) {
+                node.put(fieldName(1), "dirty-" + i);
+            }
+            documents.add(node);
+        }
+        return documents;
+    }
+
+    /**
+     * processInsertDocument只用到验证相关的依赖，其余的依赖传null
+     */
+    public static IndexService indexService(ObjectMapper objectMapper, VerifyDocService verifyDocService,
+                                            MigrationProperties migrationProperties) {
+        return new IndexService(null, null, null, null, objectMapper, null, verifyDocService, null,
+                pipelineMetrics(), null, null, migrationProperties, null);
+    }
+
+    public static PipelineMetrics pipelineMetrics() {
+        return new PipelineMetrics(new SimpleMeterRegistry());
+    }
+
+    private static String fieldName(int i) {
+        return "field" + i;
+    }
+}
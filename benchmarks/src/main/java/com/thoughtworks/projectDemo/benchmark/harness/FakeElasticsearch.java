@@ -0,0 +1,111 @@
+package com.thoughtworks.projectDemo.benchmark.harness;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内的ES替身，只实现迁移流程用到的接口
+ * _bulk只统计收到的文档数并返回没有失败的响应，其余的请求都返回acknowledged
+ * 测出来的是本服务的上限，不包含ES建立索引的开销
+ */
+public class FakeElasticsearch implements AutoCloseable {
+    private static final String ACKNOWLEDGED = "{\"acknowledged\":true}";
+    private static final String BULK_RESPONSE = "{\"took\":1,\"errors\":false,\"items\":[]}";
+    private static final String INDEX_SETTINGS = "{\"settings\":{},\"defaults\":{\"index.refresh_interval\":\"1s\","
+            + "\"index.number_of_replicas\":\"1\",\"index.translog.durability\":\"request\"}}";
+
+    private final Set<String> indices = ConcurrentHashMap.newKeySet();
+    private final AtomicLong bulkRequests = new AtomicLong();
+    private final AtomicLong indexedDocs = new AtomicLong();
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+    private HttpServer server;
+
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String getUri() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    public long getBulkRequests() {
+        return bulkRequests.get();
+    }
+
+    public long getIndexedDocs() {
+        return indexedDocs.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            var method = exchange.getRequestMethod();
+            var path = exchange.getRequestURI().getPath();
+            var segments = path.substring(1).split("/");
+            var index = segments[0];
+            // ES的Java客户端会检查这个响应头
+            exchange.getResponseHeaders().add("X-Elastic-Product", "Elasticsearch");
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            if (path.equals("/_bulk")) {
+                bulk(exchange);
+            } else if (method.equals("HEAD")) {
+                exchange.sendResponseHeaders(indices.contains(index) ? 200 : 404, -1);
+            } else if (segments.length == 1 && method.equals("PUT")) {
+                indices.add(index);
+                respond(exchange, "{\"acknowledged\":true,\"shards_acknowledged\":true,\"index\":\"" + index + "\"}");
+            } else if (segments.length == 1 && method.equals("DELETE")) {
+                indices.remove(index);
+                respond(exchange, ACKNOWLEDGED);
+            } else if (segments.length > 1 && segments[1].equals("_settings") && method.equals("GET")) {
+                respond(exchange, "{\"" + index + "\":" + INDEX_SETTINGS + "}");
+            } else {
+                exchange.getRequestBody().transferTo(OutputStream.nullOutputStream());
+                respond(exchange, ACKNOWLEDGED);
+            }
+        }
+    }
+
+    /**
+     * NDJSON中每个文档占两行
+     */
+    private void bulk(HttpExchange exchange) throws IOException {
+        long lines = 0;
+        try (var reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+            while (reader.readLine() != null) {
+                lines++;
+            }
+        }
+        bulkRequests.incrementAndGet();
+        indexedDocs.addAndGet(lines / 2);
+        respond(exchange, BULK_RESPONSE);
+    }
+
+    private void respond(HttpExchange exchange, String body) throws IOException {
+        var bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+        }
+        executor.shutdownNow();
+    }
+}
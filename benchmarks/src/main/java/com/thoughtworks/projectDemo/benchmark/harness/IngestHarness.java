@@ -0,0 +1,177 @@
+package com.thoughtworks.projectDemo.benchmark.harness;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thoughtworks.projectDemo.OpenApiGeneratorApplication;
+import com.thoughtworks.projectDemo.benchmark.BenchmarkCorpus;
+import com.thoughtworks.projectDemo.enums.JobStatus;
+import com.thoughtworks.projectDemo.model.CollectionModel;
+import com.thoughtworks.projectDemo.service.CollectionService;
+import com.thoughtworks.projectDemo.service.IndexService;
+import com.thoughtworks.projectDemo.service.JobService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.containers.RabbitMQContainer;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 端到端的导入吞吐量测试
+ * Postgres和RabbitMQ通过Testcontainers启动，ES由进程内的FakeElasticsearch代替
+ * 先通过batchUpload写入docCount个文档，再通过appendData由IndexMigrateJobListener导入ES，
+ * 输出每个阶段的吞吐量、各环节的p99延迟和堆内存的峰值
+ */
+public class IngestHarness {
+    private static final String COLLECTION_NAME = "harness";
+    private static final String BATCH_ID = "harness";
+    private static final Duration JOB_TIMEOUT = Duration.ofHours(1);
+    // PipelineMetrics中记录的各环节
+    private static final List<String> STAGE_METERS = List.of(
+            "doc.page.fetch", "doc.verify", "elastic.bulk.requests", "job.queue.time");
+    private static final String UPLOAD_METER = "harness.upload.batch";
+
+    private final ConfigurableApplicationContext context;
+    private final FakeElasticsearch elasticsearch;
+    private final AtomicLong peakHeap = new AtomicLong();
+
+    private IngestHarness(ConfigurableApplicationContext context, FakeElasticsearch elasticsearch) {
+        this.context = context;
+        this.elasticsearch = elasticsearch;
+    }
+
+    public static void main(String[] args) throws Exception {
+        var docCount = Integer.getInteger("harness.docCount", 100_000);
+        var batchSize = Integer.getInteger("harness.batchSize", 1000);
+        var mappingSize = Integer.getInteger("harness.mappingSize", 20);
+        try (var postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+             var rabbitmq = new RabbitMQContainer("rabbitmq:3.12-alpine");
+             var elasticsearch = new FakeElasticsearch()) {
+            postgres.start();
+            rabbitmq.start();
+            elasticsearch.start();
+            try (var context = new SpringApplicationBuilder(OpenApiGeneratorApplication.class)
+                    .properties(properties(postgres, rabbitmq, elasticsearch))
+                    .run(args)) {
+                new IngestHarness(context, elasticsearch).run(docCount, batchSize, mappingSize);
+            }
+        }
+    }
+
+    private static Map<String, Object> properties(PostgreSQLContainer<?> postgres, RabbitMQContainer rabbitmq,
+                                                  FakeElasticsearch elasticsearch) {
+        var properties = new HashMap<String, Object>();
+        properties.put("server.port", 0);
+        properties.put("spring.datasource.url", postgres.getJdbcUrl());
+        properties.put("spring.datasource.username", postgres.getUsername());
+        properties.put("spring.datasource.password", postgres.getPassword());
+        properties.put("spring.datasource.driver-class-name", "org.postgresql.Driver");
+        properties.put("spring.rabbitmq.addresses", rabbitmq.getHost() + ":" + rabbitmq.getAmqpPort());
+        properties.put("spring.rabbitmq.username", rabbitmq.getAdminUsername());
+        properties.put("spring.rabbitmq.password", rabbitmq.getAdminPassword());
+        properties.put("spring.rabbitmq.cache.connection.mode", "channel");
+        properties.put("spring.elasticsearch.uris", elasticsearch.getUri());
+        properties.put("management.health.elasticsearch.enabled", false);
+        for (String meter : STAGE_METERS) {
+            properties.put("management.metrics.distribution.percentiles." + meter, "0.5,0.99");
+            // 百分位默认只统计最近两分钟，改为覆盖整次运行
+            properties.put("management.metrics.distribution.expiry." + meter, JOB_TIMEOUT);
+        }
+        return properties;
+    }
+
+    private void run(int docCount, int batchSize, int mappingSize) throws InterruptedException {
+        var collectionService = context.getBean(CollectionService.class);
+        var indexService = context.getBean(IndexService.class);
+        var jobService = context.getBean(JobService.class);
+        var meterRegistry = context.getBean(MeterRegistry.class);
+        var objectMapper = context.getBean(ObjectMapper.class);
+
+        // 激活一个空的index，之后的数据都通过appendData导入
+        collectionService.createCollection(new CollectionModel()
+                .name(COLLECTION_NAME)
+                .indices(List.of(BenchmarkCorpus.indexModel(mappingSize))));
+        waitForJob(jobService, indexService.activeIndex(BenchmarkCorpus.INDEX_NAME).getId());
+
+        var heapSampler = Executors.newSingleThreadScheduledExecutor();
+        var memoryMXBean = ManagementFactory.getMemoryMXBean();
+        heapSampler.scheduleAtFixedRate(() -> peakHeap.accumulateAndGet(memoryMXBean.getHeapMemoryUsage().getUsed(), Math::max),
+                0, 50, TimeUnit.MILLISECONDS);
+        try {
+            // 生成文档不计入上传的耗时
+            var uploadTimer = Timer.builder(UPLOAD_METER)
+                    .publishPercentiles(0.5, 0.99)
+                    .distributionStatisticExpiry(JOB_TIMEOUT)
+                    .register(meterRegistry);
+            for (int start = 0; start < docCount; start += batchSize) {
+                var batch = new ArrayList<Object>(BenchmarkCorpus.documentNodes(objectMapper, start,
+                        Math.min(batchSize, docCount - start), mappingSize, BenchmarkCorpus.DocShape.NARROW, 0));
+                uploadTimer.record(() -> collectionService.batchUpload(COLLECTION_NAME, Optional.of(BATCH_ID), batch));
+            }
+            var uploadNanos = uploadTimer.totalTime(TimeUnit.NANOSECONDS);
+
+            var migrateStart = System.nanoTime();
+            waitForJob(jobService, indexService.appendData(BenchmarkCorpus.INDEX_NAME).getId());
+            var migrateNanos = System.nanoTime() - migrateStart;
+
+            System.out.printf("%ndocs: %d, batch size: %d, mapping size: %d%n", docCount, batchSize, mappingSize);
+            System.out.printf("upload:  %,.0f docs/s%n", docCount * 1e9 / uploadNanos);
+            System.out.printf("migrate: %,.0f docs/s, %d docs in %d _bulk requests%n",
+                    docCount * 1e9 / migrateNanos, elasticsearch.getIndexedDocs(), elasticsearch.getBulkRequests());
+            System.out.printf("%-45s %8s %10s %10s %10s%n", "stage", "count", "p50 ms", "p99 ms", "max ms");
+            printTimers(meterRegistry, UPLOAD_METER);
+            STAGE_METERS.forEach(meter -> printTimers(meterRegistry, meter));
+            System.out.printf("peak heap: %,d MB%n", peakHeap.get() / 1024 / 1024);
+        } finally {
+            heapSampler.shutdownNow();
+        }
+    }
+
+    private void waitForJob(JobService jobService, Long jobId) throws InterruptedException {
+        var deadline = System.nanoTime() + JOB_TIMEOUT.toNanos();
+        while (System.nanoTime() < deadline) {
+            var status = jobService.getJob(jobId).getStatus();
+            if (status == JobStatus.Succeed) {
+                return;
+            }
+            if (status == JobStatus.Failed) {
+                throw new RuntimeException("Job " + jobId + " failed");
+            }
+            Thread.sleep(100);
+        }
+        throw new RuntimeException("Job " + jobId + " timed out");
+    }
+
+    private static void printTimers(MeterRegistry meterRegistry, String name) {
+        for (Timer timer : meterRegistry.find(name).timers()) {
+            var snapshot = timer.takeSnapshot();
+            var tags = timer.getId().getTags().stream()
+                    .map(tag -> tag.getKey() + "=" + tag.getValue())
+                    .collect(Collectors.joining(",", "{", "}"));
+            System.out.printf("%-45s %8d %10.2f %10.2f %10.2f%n", name + (tags.equals("{}") ? "" : tags), snapshot.count(),
+                    percentile(snapshot.percentileValues(), 0.5), percentile(snapshot.percentileValues(), 0.99),
+                    snapshot.max(TimeUnit.MILLISECONDS));
+        }
+    }
+
+    private static double percentile(ValueAtPercentile[] values, double percentile) {
+        for (ValueAtPercentile value : values) {
+            if (value.percentile() == percentile) {
+                return value.value(TimeUnit.MILLISECONDS);
+            }
+        }
+        return Double.NaN;
+    }
+}
@@ -0,0 +1,8 @@
+-- 拆分后的子任务指向父任务
+alter table public.job
+    add column parent_id bigint;
+
+comment on column public.job.parent_id is '父任务id，按DOC.ID范围拆分的子任务才有';
+
+create index job_parent_id_index
+    on public.job (parent_id);
@@ -0,0 +1,8 @@
+-- 迁移任务定期记录已经写入ES的最后一个docId，重新投递时从这里继续
+alter table public.job
+    add column checkpoint_doc_id bigint;
+
+comment on column public.job.checkpoint_doc_id is '已经确认写入ES的最后一个docId';
+
+-- 迁移失败后索引不再回到Activated
+alter type index_status add value 'MigrateFailed';
@@ -0,0 +1,5 @@
+-- 重建期间正在后台构建的ES物理索引，构建完成后切换为es_index_name
+alter table public.index
+    add column building_es_index_name varchar(255);
+
+comment on column public.index.building_es_index_name is '正在重建的ES物理索引';
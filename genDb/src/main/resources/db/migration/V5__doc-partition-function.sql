@@ -0,0 +1,32 @@
+-- 创建collection对应的doc分区表，已经存在时直接返回表名
+-- 批量导入时在开始前调用一次，之后通过COPY直接写入分区表，不再经过逐行执行的触发器
+CREATE OR REPLACE FUNCTION ensure_doc_partition(p_collection_id bigint)
+    RETURNS text AS $$
+DECLARE
+    partition_name text := 'doc_collection_' || p_collection_id;
+BEGIN
+    IF NOT EXISTS(SELECT * FROM pg_class WHERE relname = partition_name AND relkind = 'r') THEN
+        -- 同一个collection并发创建分区时排队
+        PERFORM pg_advisory_xact_lock(p_collection_id);
+        EXECUTE 'CREATE TABLE IF NOT EXISTS ' || partition_name || ' (CHECK (collection_id = ''' || p_collection_id || ''')) INHERITS (public.doc)';
+        -- 创建索引
+        EXECUTE 'CREATE INDEX IF NOT EXISTS idx_' || partition_name || '_batch_id ON ' || partition_name || '(batch_id)';
+        EXECUTE 'CREATE INDEX IF NOT EXISTS idx_' || partition_name || '_create_at ON ' || partition_name || '(create_at)';
+        EXECUTE 'CREATE INDEX IF NOT EXISTS idx_' || partition_name || '_collection_id ON ' || partition_name || '(collection_id)';
+        EXECUTE 'CREATE INDEX IF NOT EXISTS idx_' || partition_name || '_modify_by_index ON ' || partition_name || '(modify_by_index)';
+    END IF;
+    RETURN partition_name;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 触发器复用同一个函数创建分区，同时保留modify_by_index
+CREATE OR REPLACE FUNCTION create_partition_and_insert()
+    RETURNS TRIGGER AS $$
+BEGIN
+    -- 插入数据到相应的分区表
+    EXECUTE 'INSERT INTO ' || ensure_doc_partition(NEW.collection_id) || ' (collection_id, batch_id, source, modify_by_index, create_at)
+             VALUES ($1.collection_id, $1.batch_id, $1.source, $1.modify_by_index, COALESCE($1.create_at, CURRENT_TIMESTAMP))' USING NEW;
+
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
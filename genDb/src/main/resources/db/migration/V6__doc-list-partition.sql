@@ -0,0 +1,125 @@
+-- doc从继承+触发器的分区改为声明式的LIST分区，source改为jsonb
+-- 分区键必须包含在主键中，主键改为(collection_id, id)，同时可以直接用于按collection顺序读取doc
+
+DROP TRIGGER IF EXISTS insert_doc_trigger ON public.doc;
+DROP FUNCTION IF EXISTS create_partition_and_insert();
+
+ALTER TABLE public.doc RENAME TO doc_legacy;
+-- 旧表的索引改名或删除，避免和新表的索引重名
+ALTER INDEX public.doc_pkey RENAME TO doc_legacy_pkey;
+DROP INDEX public.doc_batch_id_index;
+DROP INDEX public.doc_create_at_index;
+DROP INDEX public.doc_collection_id_index;
+DROP INDEX public.doc_modify_by_index_index;
+ALTER SEQUENCE public.doc_id_seq OWNED BY NONE;
+
+-- 旧的分区表改名，新分区沿用doc_collection_<id>的命名
+DO $$
+DECLARE
+    child record;
+BEGIN
+    FOR child IN SELECT c.relname FROM pg_inherits i
+                 JOIN pg_class c ON c.oid = i.inhrelid
+                 JOIN pg_class p ON p.oid = i.inhparent
+                 WHERE p.relname = 'doc_legacy'
+    LOOP
+        EXECUTE 'ALTER TABLE ' || child.relname || ' RENAME TO ' || child.relname || '_legacy';
+    END LOOP;
+END;
+$$;
+
+create table public.doc
+(
+    id              bigint default nextval('public.doc_id_seq') not null,
+    collection_id   bigint                                      not null,
+    batch_id        varchar(255) default 'default'              not null,
+    source          jsonb,
+    modify_by_index bigint,
+    create_at       timestamp default current_timestamp,
+    primary key (collection_id, id)
+) partition by list (collection_id);
+
+ALTER SEQUENCE public.doc_id_seq OWNED BY public.doc.id;
+
+comment on column public.doc.batch_id is '用于区分文档上传时候的批次信息';
+
+-- 创建collection对应的doc分区，已经存在时直接返回表名
+CREATE OR REPLACE FUNCTION ensure_doc_partition(p_collection_id bigint)
+    RETURNS text AS $$
+DECLARE
+    partition_name text := 'doc_collection_' || p_collection_id;
+BEGIN
+    IF NOT EXISTS(SELECT * FROM pg_class WHERE relname = partition_name AND relkind = 'r') THEN
+        -- 同一个collection并发创建分区时排队
+        PERFORM pg_advisory_xact_lock(p_collection_id);
+        EXECUTE 'CREATE TABLE IF NOT EXISTS ' || partition_name || ' PARTITION OF public.doc FOR VALUES IN (' || p_collection_id || ')';
+    END IF;
+    RETURN partition_name;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 为已有的collection创建分区并迁移数据
+DO $$
+DECLARE
+    collection_row record;
+BEGIN
+    FOR collection_row IN SELECT id FROM public.collection
+                          UNION
+                          SELECT DISTINCT collection_id FROM public.doc_legacy
+    LOOP
+        PERFORM ensure_doc_partition(collection_row.id);
+    END LOOP;
+END;
+$$;
+
+-- 旧表的source是text，非法的JSON或包含\u0000的字符串不能转换为jsonb，直接转换时第一行这样的数据就会让整个迁移失败
+-- 转换失败的行原样保存到doc_legacy_invalid，不阻止迁移，修复后需要重新写入doc
+-- 每行转换都在一个子事务中执行，数据量很大时迁移会比直接转换慢
+CREATE OR REPLACE FUNCTION try_cast_jsonb(p_source text)
+    RETURNS jsonb AS $$
+BEGIN
+    RETURN p_source::jsonb;
+EXCEPTION WHEN others THEN
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql IMMUTABLE;
+
+create table public.doc_legacy_invalid
+(
+    id              bigint       not null primary key,
+    collection_id   bigint       not null,
+    batch_id        varchar(255) not null,
+    source          text,
+    modify_by_index bigint,
+    create_at       timestamp
+);
+
+comment on table public.doc_legacy_invalid is '迁移到jsonb时source不能转换的旧文档，修复后需要重新写入doc';
+
+WITH converted AS MATERIALIZED (
+    SELECT id, collection_id, batch_id, source, try_cast_jsonb(source) AS source_jsonb, modify_by_index, create_at
+    FROM public.doc_legacy
+), invalid AS (
+    INSERT INTO public.doc_legacy_invalid (id, collection_id, batch_id, source, modify_by_index, create_at)
+    SELECT id, collection_id, batch_id, source, modify_by_index, create_at
+    FROM converted
+    WHERE source IS NOT NULL AND source_jsonb IS NULL
+)
+INSERT INTO public.doc (id, collection_id, batch_id, source, modify_by_index, create_at)
+SELECT id, collection_id, batch_id, source_jsonb, modify_by_index, create_at
+FROM converted
+WHERE source IS NULL OR source_jsonb IS NOT NULL;
+
+DROP FUNCTION try_cast_jsonb(text);
+
+DROP TABLE public.doc_legacy CASCADE;
+
+-- 在分区表上创建的索引会自动创建到每个分区上
+create index doc_batch_id_index
+    on public.doc (batch_id);
+
+create index doc_create_at_index
+    on public.doc (create_at);
+
+create index doc_modify_by_index_index
+    on public.doc (modify_by_index);
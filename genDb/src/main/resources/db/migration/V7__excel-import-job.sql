@@ -0,0 +1,2 @@
+-- excel导入改为异步任务
+alter type job_type add value 'ExcelImport';
@@ -0,0 +1,5 @@
+-- 迁移任务定期记录处理进度和吞吐量
+alter table public.job
+    add column progress jsonb;
+
+comment on column public.job.progress is '任务的处理进度，包括各阶段的文档数、发送的字节数、当前docId和每秒处理的文档数';